@@ -0,0 +1,226 @@
+import javax.swing.SwingUtilities;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a filter on a copy of a picture on a background thread, so a
+ * window showing the picture never freezes while it works.
+ *
+ * If the picture is large, the filter is first run on a small copy
+ * from the picture's pyramid, which takes a moment and is handed over
+ * as a preview.  Then the filter is run on a full-size copy, with its
+ * progress reported along the way, and the result is handed over when
+ * it is done.  The picture itself is not changed.  A filter can be
+ * cancelled at any time; filters built on ParallelRows stop at the
+ * next band of rows.
+ *
+ * Filters run one at a time on a single shared thread, and everything
+ * is handed to the listener on the Swing event thread.
+ */
+public class BackgroundFilter
+{
+  /**
+   * A change to make to a picture, such as p -> p.gaussianBlur(2)
+   */
+  public interface Filter
+  {
+    /**
+     * Method to change a picture in place
+     * @param picture the picture to change
+     */
+    void apply(Picture picture);
+  }
+
+  /**
+   * Something that wants the results of a background filter.  All of
+   * these are called on the Swing event thread.
+   */
+  public interface Listener
+  {
+    /**
+     * Method called with the filter applied to a small copy
+     * @param preview the small filtered copy
+     */
+    void previewReady(Picture preview);
+
+    /**
+     * Method called as the full-size filter gets further
+     * @param fraction how much is done, from 0 to 1
+     */
+    void progressChanged(double fraction);
+
+    /**
+     * Method called with the filter applied to a full-size copy
+     * @param result the filtered copy
+     */
+    void finished(Picture result);
+
+    /**
+     * Method called instead of finished if the filter was cancelled
+     */
+    void cancelled();
+
+    /**
+     * Method called instead of finished if the filter failed
+     * @param error what went wrong
+     */
+    void failed(RuntimeException error);
+  }
+
+  /** the thread filters run on, which doesn't keep the program running */
+  private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(work -> {
+    Thread thread = new Thread(work, "background filter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /** the picture to filter */
+  private final SimplePicture picture;
+
+  /** the filter to run */
+  private final Filter filter;
+
+  /** the largest width or height of the preview, or 0 for none */
+  private final int previewSize;
+
+  /** who to hand the results to */
+  private final Listener listener;
+
+  /** the progress and cancel flag of the full-size run */
+  private final FilterProgress progress;
+
+  /** the last whole percent reported, so the event thread isn't flooded */
+  private volatile int lastPercent = -1;
+
+  /**
+   * Constructor that sets up a filter run; use start to make one
+   */
+  private BackgroundFilter(SimplePicture picture, Filter filter, int previewSize, Listener listener)
+  {
+    this.picture = picture;
+    this.filter = filter;
+    this.previewSize = previewSize;
+    this.listener = listener;
+    this.progress = new FilterProgress(fraction -> reportProgress(fraction));
+  }
+
+  /**
+   * Method to start filtering a copy of a picture in the background
+   * @param picture the picture to filter, which is not changed
+   * @param filter the filter to run
+   * @param previewSize the largest width or height of the preview, such
+   * as 512; no preview is made if the picture is no bigger than this
+   * or if this is 0
+   * @param listener who to hand the preview and result to
+   * @return the running filter, which can be cancelled
+   */
+  public static BackgroundFilter start(SimplePicture picture, Filter filter, int previewSize,
+                                       Listener listener)
+  {
+    BackgroundFilter running = new BackgroundFilter(picture, filter, previewSize, listener);
+    EXECUTOR.execute(() -> running.run());
+    return running;
+  }
+
+  /**
+   * Method to ask the filter to stop.  Once this is called (on the
+   * event thread) the listener gets cancelled and nothing else, even if
+   * the filter was just about to finish.
+   */
+  public void cancel()
+  {
+    progress.cancel();
+  }
+
+  /**
+   * Method to check if the filter has been cancelled
+   * @return true if cancel has been called
+   */
+  public boolean isCancelled()
+  {
+    return progress.isCancelled();
+  }
+
+  /**
+   * Method to do the work, on the background thread
+   */
+  private void run()
+  {
+    try
+    {
+      progress.checkCancelled();
+      int largest = Math.max(picture.getWidth(), picture.getHeight());
+      if (previewSize > 0 && largest > previewSize)
+      {
+        Picture preview = picture.getPyramid().getScaled((double) previewSize / largest);
+        progress.run(() -> filter.apply(preview));
+        SwingUtilities.invokeLater(() -> {
+          if (!progress.isCancelled())
+            listener.previewReady(preview);
+        });
+        // only the full-size run counts towards the progress
+        progress.reset();
+        lastPercent = -1;
+      }
+
+      Picture result = new Picture(new BufferedImage(picture.getWidth(), picture.getHeight(),
+                                                     BufferedImage.TYPE_INT_RGB));
+      result.copyPicture(picture);
+      progress.run(() -> filter.apply(result));
+      SwingUtilities.invokeLater(() -> {
+        if (progress.isCancelled())
+          listener.cancelled();
+        else
+          listener.finished(result);
+      });
+    }
+    catch (CancellationException ex)
+    {
+      SwingUtilities.invokeLater(() -> listener.cancelled());
+    }
+    catch (RuntimeException ex)
+    {
+      reportFailure(ex);
+    }
+    catch (Error ex)
+    {
+      // such as running out of memory copying a big picture; the copy
+      // is gone by now, so the listener can still be told
+      reportFailure(new IllegalStateException("the filter could not finish: " + ex, ex));
+    }
+  }
+
+  /**
+   * Method to tell the listener the filter failed, or that it was
+   * cancelled if it was cancelled first
+   * @param error what went wrong
+   */
+  private void reportFailure(RuntimeException error)
+  {
+    SwingUtilities.invokeLater(() -> {
+      if (progress.isCancelled())
+        listener.cancelled();
+      else
+        listener.failed(error);
+    });
+  }
+
+  /**
+   * Method to pass progress on to the listener, at most once for each
+   * whole percent
+   * @param fraction how much is done, from 0 to 1
+   */
+  private void reportProgress(double fraction)
+  {
+    int percent = (int) (fraction * 100);
+    if (percent == lastPercent)
+      return;
+    lastPercent = percent;
+    SwingUtilities.invokeLater(() -> {
+      if (!progress.isCancelled())
+        listener.progressChanged(fraction);
+    });
+  }
+}
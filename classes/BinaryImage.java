@@ -0,0 +1,196 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A black and white image stored as one bit per pixel, 64 pixels to a
+ * long.  Column c of a row is bit (c % 64) of word (c / 64) of that row,
+ * and bits past the width in the last word of a row are always zero.
+ * A set bit is a foreground pixel, drawn in black, like the edges made
+ * by Picture.edgeDetection.
+ */
+public class BinaryImage
+{
+  /** the width and height of the image */
+  private final int width;
+  private final int height;
+
+  /** the number of longs used for each row */
+  private final int wordsPerRow;
+
+  /** the bits of the image, row after row */
+  private final long[] bits;
+
+  /**
+   * Constructor that makes an empty (all background) image
+   * @param width the width of the image
+   * @param height the height of the image
+   */
+  public BinaryImage(int width, int height)
+  {
+    this.width = width;
+    this.height = height;
+    this.wordsPerRow = (width + 63) >>> 6;
+    this.bits = new long[wordsPerRow * height];
+  }
+
+  /**
+   * Constructor that copies another binary image
+   * @param other the image to copy
+   */
+  public BinaryImage(BinaryImage other)
+  {
+    this.width = other.width;
+    this.height = other.height;
+    this.wordsPerRow = other.wordsPerRow;
+    this.bits = other.bits.clone();
+  }
+
+  /**
+   * Method to make a binary image from a picture.  Dark pixels (with an
+   * average color under 128) become foreground, so the black edges of
+   * an edge detection picture are the set pixels.
+   * @param picture the picture to convert
+   * @return the binary image
+   */
+  public static BinaryImage fromPicture(SimplePicture picture)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    BinaryImage image = new BinaryImage(width, height);
+    for (int row = 0; row < height; row++)
+    {
+      for (int col = 0; col < width; col++)
+      {
+        int rgb = pixels[row * width + col];
+        int sum = ((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff);
+        if (sum < 3 * 128)
+          image.bits[row * image.wordsPerRow + (col >>> 6)] |= 1L << col;
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Method to make a binary image from a mask
+   * @param mask true for foreground pixels, in row-major order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the binary image
+   */
+  public static BinaryImage fromMask(boolean[] mask, int width, int height)
+  {
+    BinaryImage image = new BinaryImage(width, height);
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        if (mask[row * width + col])
+          image.bits[row * image.wordsPerRow + (col >>> 6)] |= 1L << col;
+    return image;
+  }
+
+  /**
+   * Method to draw the image as a picture, black foreground on white
+   * @return the new picture
+   */
+  public Picture toPicture()
+  {
+    int black = Color.BLACK.getRGB();
+    int white = Color.WHITE.getRGB();
+    int[] pixels = new int[width * height];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixels[row * width + col] = get(col, row) ? black : white;
+    Picture picture = new Picture(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    picture.setBasicPixels(0, 0, width, height, pixels);
+    return picture;
+  }
+
+  /**
+   * Method to get the width of the image
+   * @return the width in pixels
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the image
+   * @return the height in pixels
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the number of longs used for each row
+   * @return the words per row
+   */
+  public int getWordsPerRow() { return wordsPerRow; }
+
+  /**
+   * Method to get the bits of the image.  The array is shared, not
+   * copied; bits past the width must be left zero.
+   * @return the bits, row after row
+   */
+  public long[] getBits() { return bits; }
+
+  /**
+   * Method to check if a pixel is foreground
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @return true if the pixel is set
+   */
+  public boolean get(int x, int y)
+  {
+    return (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+  }
+
+  /**
+   * Method to set or clear a pixel
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @param value true to make the pixel foreground
+   */
+  public void set(int x, int y, boolean value)
+  {
+    int i = y * wordsPerRow + (x >>> 6);
+    if (value)
+      bits[i] |= 1L << x;
+    else
+      bits[i] &= ~(1L << x);
+  }
+
+  /**
+   * Method to count the foreground pixels
+   * @return the number of set pixels
+   */
+  public int count()
+  {
+    int total = 0;
+    for (long word : bits)
+      total += Long.bitCount(word);
+    return total;
+  }
+
+  /**
+   * Method to get the bits that are used in the last word of a row
+   * @return a mask of the columns inside the image
+   */
+  long lastWordMask()
+  {
+    int used = width & 63;
+    return used == 0 ? -1L : (1L << used) - 1;
+  }
+
+  @Override
+  public boolean equals(Object other)
+  {
+    if (!(other instanceof BinaryImage))
+      return false;
+    BinaryImage that = (BinaryImage) other;
+    return width == that.width && height == that.height && Arrays.equals(bits, that.bits);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return 31 * (31 * width + height) + Arrays.hashCode(bits);
+  }
+}
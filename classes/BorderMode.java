@@ -0,0 +1,58 @@
+/**
+ * How a neighbourhood filter finds pixels that are off the edge of
+ * the picture.
+ */
+public enum BorderMode
+{
+  /** use the closest pixel on the picture, as EdgeHelpers.getNeighbor does */
+  CLAMP,
+
+  /** wrap around to the other side, as IntVector.add does with a modulus */
+  WRAP,
+
+  /** reflect back into the picture without repeating the edge pixel */
+  MIRROR;
+
+  /**
+   * Method to turn a row or column index that may be off the picture
+   * into one that is on it
+   * @param index the index, possibly negative or too large
+   * @param size the number of rows or columns in the picture
+   * @return an index from 0 to size - 1
+   */
+  public int resolve(int index, int size)
+  {
+    if (index >= 0 && index < size)
+      return index;
+    switch (this)
+    {
+      case WRAP:
+        return IntVector.modulus(index, size);
+      case MIRROR:
+        if (size == 1)
+          return 0;
+        int period = 2 * (size - 1);
+        int folded = IntVector.modulus(index, period);
+        return folded < size ? folded : period - folded;
+      default:
+        return index < 0 ? 0 : size - 1;
+    }
+  }
+
+  /**
+   * Method to make a table of resolved indexes for a filter that reaches
+   * before to after positions past each end, so the inner loops of a
+   * filter never have to check for the edge
+   * @param size the number of rows or columns in the picture
+   * @param before how far the filter reaches below index 0
+   * @param after how far the filter reaches past index size - 1
+   * @return table where entry i is the resolved index of i - before
+   */
+  public int[] indexTable(int size, int before, int after)
+  {
+    int[] table = new int[before + size + after];
+    for (int i = 0; i < table.length; i++)
+      table[i] = resolve(i - before, size);
+    return table;
+  }
+}
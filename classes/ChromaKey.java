@@ -0,0 +1,220 @@
+import java.awt.Color;
+
+/**
+ * Green-screen (or blue-screen) compositing: every pixel of a picture
+ * that is close to a key color is replaced by the pixel of a background
+ * picture at the same place.
+ *
+ * Closeness is the squared distance to the key, in whole numbers, so no
+ * square roots are taken per pixel.  It can be measured in red, green
+ * and blue, like Pixel.colorDistance, or on only the two chroma (Cb and
+ * Cr) values of YCbCr, which ignores brightness so shadows and folds in
+ * the screen still match the key.  Between the tolerance and the
+ * tolerance plus the softness the two pictures are blended, which keeps
+ * the edges of hair and the like from looking cut out.  The blend
+ * amount for every possible squared distance comes from a table made
+ * once per call, and bands of rows run in parallel.
+ *
+ * applyPerceptual measures closeness as delta E in Lab instead (see
+ * ColorSpaces), so the tolerance means the same visible difference
+ * whatever the key color is.
+ */
+public class ChromaKey
+{
+  /** the blend weight of a pixel that is all foreground */
+  private static final int OPAQUE = 256;
+
+  /** the largest squared distance there can be between two colors */
+  private static final int MAX_DISTANCE = 3 * 255 * 255;
+
+  /**
+   * Method to replace the pixels of a picture that are close to a key
+   * color with the pixels of a background.  Where the background is
+   * smaller than the picture the picture is left alone.
+   * @param picture the picture to change
+   * @param background the picture to show through
+   * @param key the color of the screen
+   * @param tolerance how far from the key a color can be and be
+   * replaced completely
+   * @param softness how much further than the tolerance a color can be
+   * and be blended with the background; 0 for a hard edge
+   * @param chromaOnly true to compare only the chroma of the colors,
+   * false to compare red, green and blue
+   */
+  public static void apply(SimplePicture picture, SimplePicture background,
+                           Color key, double tolerance, double softness,
+                           boolean chromaOnly)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int backWidth = Math.min(width, background.getWidth());
+    int backHeight = Math.min(height, background.getHeight());
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    int[] back = background.getBasicPixels(0, 0, backWidth, backHeight);
+    int[] weights = weightTable(tolerance, softness);
+    int keyRgb = key.getRGB();
+    int keyFirst, keySecond, keyThird;
+    if (chromaOnly)
+    {
+      keyFirst = chromaBlue(keyRgb);
+      keySecond = chromaRed(keyRgb);
+      keyThird = 0;
+    }
+    else
+    {
+      keyFirst = (keyRgb >> 16) & 0xff;
+      keySecond = (keyRgb >> 8) & 0xff;
+      keyThird = keyRgb & 0xff;
+    }
+
+    ParallelRows.forEachBand(backHeight, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        for (int col = 0; col < backWidth; col++)
+        {
+          int i = row * width + col;
+          int rgb = pixels[i];
+          int distance;
+          if (chromaOnly)
+          {
+            int first = chromaBlue(rgb) - keyFirst;
+            int second = chromaRed(rgb) - keySecond;
+            distance = first * first + second * second;
+          }
+          else
+          {
+            int first = ((rgb >> 16) & 0xff) - keyFirst;
+            int second = ((rgb >> 8) & 0xff) - keySecond;
+            int third = (rgb & 0xff) - keyThird;
+            distance = first * first + second * second + third * third;
+          }
+          if (distance >= weights.length)
+            continue;
+          int weight = weights[distance];
+          int other = back[row * backWidth + col];
+          if (weight == 0)
+            pixels[i] = (rgb & 0xff000000) | (other & 0x00ffffff);
+          else
+            pixels[i] = (rgb & 0xff000000) | blend(rgb, other, weight);
+        }
+      }
+    });
+    picture.setBasicPixels(0, 0, width, height, pixels);
+  }
+
+  /**
+   * Method to replace the pixels of a picture that look close to a key
+   * color with the pixels of a background, measuring closeness as Lab
+   * delta E.  Where the background is smaller than the picture the
+   * picture is left alone.
+   * @param picture the picture to change
+   * @param background the picture to show through
+   * @param key the color of the screen
+   * @param tolerance how far (in delta E) from the key a color can be
+   * and be replaced completely
+   * @param softness how much further than the tolerance a color can be
+   * and be blended with the background; 0 for a hard edge
+   */
+  public static void applyPerceptual(SimplePicture picture, SimplePicture background,
+                                     Color key, double tolerance, double softness)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int backWidth = Math.min(width, background.getWidth());
+    int backHeight = Math.min(height, background.getHeight());
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    int[] back = background.getBasicPixels(0, 0, backWidth, backHeight);
+    float[] lab = ColorSpaces.toLab(pixels, width, height);
+    float[] keyLab = new float[3];
+    ColorSpaces.toLab(key.getRGB(), keyLab, 0);
+    double inner = Math.max(tolerance, 0);
+    double outer = inner + Math.max(softness, 0);
+
+    ParallelRows.forEachBand(backHeight, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        for (int col = 0; col < backWidth; col++)
+        {
+          int i = row * width + col;
+          float lightness = lab[3 * i] - keyLab[0];
+          float a = lab[3 * i + 1] - keyLab[1];
+          float b = lab[3 * i + 2] - keyLab[2];
+          float squared = lightness * lightness + a * a + b * b;
+          if (squared >= outer * outer)
+            continue;
+          int rgb = pixels[i];
+          int other = back[row * backWidth + col];
+          if (squared <= inner * inner)
+            pixels[i] = (rgb & 0xff000000) | (other & 0x00ffffff);
+          else
+          {
+            int weight = (int) Math.round((Math.sqrt(squared) - inner) / softness * OPAQUE);
+            pixels[i] = (rgb & 0xff000000) | blend(rgb, other, weight);
+          }
+        }
+      }
+    });
+    picture.setBasicPixels(0, 0, width, height, pixels);
+  }
+
+  /**
+   * Method to make the table of blend weights.  Entry d is the weight
+   * of the foreground for a color at squared distance d from the key;
+   * the table stops where the weight reaches OPAQUE.
+   * @param tolerance the distance up to which the weight is 0
+   * @param softness the distance over which the weight rises to OPAQUE
+   * @return the weights
+   */
+  private static int[] weightTable(double tolerance, double softness)
+  {
+    double inner = Math.max(tolerance, 0);
+    double outer = inner + Math.max(softness, 0);
+    int size = (int) Math.min(MAX_DISTANCE + 1L, (long) Math.ceil(outer * outer) + 1);
+    int[] weights = new int[size];
+    for (int d = 0; d < size; d++)
+    {
+      double distance = Math.sqrt(d);
+      if (distance <= inner)
+        weights[d] = 0;
+      else if (distance >= outer)
+        weights[d] = OPAQUE;
+      else
+        weights[d] = (int) Math.round((distance - inner) / softness * OPAQUE);
+    }
+    return weights;
+  }
+
+  /**
+   * Method to mix two colors
+   * @param front the foreground color
+   * @param back the background color
+   * @param weight how much of the foreground to use, from 0 to OPAQUE
+   * @return the red, green and blue of the mix
+   */
+  private static int blend(int front, int back, int weight)
+  {
+    int rest = OPAQUE - weight;
+    int red = (((front >> 16) & 0xff) * weight + ((back >> 16) & 0xff) * rest) >> 8;
+    int green = (((front >> 8) & 0xff) * weight + ((back >> 8) & 0xff) * rest) >> 8;
+    int blue = ((front & 0xff) * weight + (back & 0xff) * rest) >> 8;
+    return (red << 16) | (green << 8) | blue;
+  }
+
+  /**
+   * Method to get the blue-difference chroma (Cb) of a color, without
+   * the usual offset of 128
+   */
+  private static int chromaBlue(int rgb)
+  {
+    return (-43 * ((rgb >> 16) & 0xff) - 85 * ((rgb >> 8) & 0xff) + 128 * (rgb & 0xff)) >> 8;
+  }
+
+  /**
+   * Method to get the red-difference chroma (Cr) of a color, without
+   * the usual offset of 128
+   */
+  private static int chromaRed(int rgb)
+  {
+    return (128 * ((rgb >> 16) & 0xff) - 107 * ((rgb >> 8) & 0xff) - 21 * (rgb & 0xff)) >> 8;
+  }
+}
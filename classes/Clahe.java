@@ -0,0 +1,211 @@
+/**
+ * Contrast-limited adaptive histogram equalization (CLAHE).  Plain
+ * histogram equalization spreads the brightness values of the whole
+ * picture out evenly, which does little for a picture that is dark in
+ * one part and bright in another.  CLAHE splits the picture into a
+ * grid of tiles and equalizes each tile by itself, so every part gets
+ * its own stretch.
+ *
+ * Each tile's histogram is clipped before it is used: counts above the
+ * clip limit are cut off and shared out over all the values, which
+ * stops flat areas (like open water) from having their noise blown up.
+ * The clipped histogram gives the tile a lookup table from old to new
+ * brightness.  To hide the tile edges, each pixel mixes the tables of
+ * the four tiles whose centers are around it, weighted by how close
+ * it is to each.
+ *
+ * Only brightness (Y in YCbCr, with the same weights as
+ * EdgeDetectors.luminance) is changed.  The same amount is added to the
+ * red, green and blue of each pixel, which leaves Cb and Cr, and so the
+ * colors, as they were.  Tiles and rows are both done in parallel.
+ */
+public class Clahe
+{
+  /** the number of brightness values */
+  private static final int VALUES = 256;
+
+  /**
+   * Method to equalize a picture in place
+   * @param picture the picture to change
+   * @param tilesX the number of tiles across
+   * @param tilesY the number of tiles down
+   * @param clipLimit how many times the average count a histogram value
+   * can have before it is clipped, such as 2 or 3; 0 or less for no clipping
+   */
+  public static void apply(SimplePicture picture, int tilesX, int tilesY, double clipLimit)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int columns = Math.max(1, Math.min(tilesX, width));
+    int rows = Math.max(1, Math.min(tilesY, height));
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    int[] xEdges = edges(width, columns);
+    int[] yEdges = edges(height, rows);
+
+    byte[] luminance = new byte[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+        luminance[i] = (byte) EdgeDetectors.luminance(pixels[i]);
+    });
+
+    // one lookup table per tile, tiles in row-major order
+    int[][] tables = new int[columns * rows][];
+    ParallelRows.forEachBand(columns * rows, 1, (startTile, endTile) -> {
+      for (int tile = startTile; tile < endTile; tile++)
+      {
+        int tileX = tile % columns;
+        int tileY = tile / columns;
+        tables[tile] = table(luminance, width, xEdges[tileX], xEdges[tileX + 1],
+                             yEdges[tileY], yEdges[tileY + 1], clipLimit);
+      }
+    });
+
+    // which two tiles each column and row sits between, and how far across
+    int[] xFirst = new int[width];
+    int[] xWeight = new int[width];
+    interpolation(xEdges, xFirst, xWeight);
+    int[] yFirst = new int[height];
+    int[] yWeight = new int[height];
+    interpolation(yEdges, yFirst, yWeight);
+
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        int top = yFirst[row] * columns;
+        int bottom = Math.min(yFirst[row] + 1, rows - 1) * columns;
+        int down = yWeight[row];
+        for (int col = 0; col < width; col++)
+        {
+          int i = row * width + col;
+          int y = luminance[i] & 0xff;
+          int left = xFirst[col];
+          int right = Math.min(left + 1, columns - 1);
+          int across = xWeight[col];
+          int upper = tables[top + left][y] * (256 - across) + tables[top + right][y] * across;
+          int lower = tables[bottom + left][y] * (256 - across) + tables[bottom + right][y] * across;
+          int newY = (upper * (256 - down) + lower * down + (1 << 15)) >> 16;
+          pixels[i] = shift(pixels[i], newY - y);
+        }
+      }
+    });
+    picture.setBasicPixels(0, 0, width, height, pixels);
+  }
+
+  /**
+   * Method to split a length into nearly equal parts
+   * @param length the length to split
+   * @param parts the number of parts
+   * @return the parts + 1 places where the parts start and end
+   */
+  private static int[] edges(int length, int parts)
+  {
+    int[] edges = new int[parts + 1];
+    for (int k = 0; k <= parts; k++)
+      edges[k] = (int) ((long) k * length / parts);
+    return edges;
+  }
+
+  /**
+   * Method to find, for every position, the tile whose center is at or
+   * before it and how far it is (out of 256) towards the next center.
+   * Positions before the first center or after the last use only that tile.
+   * @param edges where the tiles start and end
+   * @param first where to put the tile before each position
+   * @param weight where to put the weight of the tile after it
+   */
+  private static void interpolation(int[] edges, int[] first, int[] weight)
+  {
+    int tiles = edges.length - 1;
+    int tile = 0;
+    for (int pos = 0; pos < first.length; pos++)
+    {
+      // centers are doubled to stay whole numbers
+      while (tile < tiles - 1 && edges[tile + 1] + edges[tile + 2] <= 2 * pos + 1)
+        tile++;
+      int center = edges[tile] + edges[tile + 1];
+      first[pos] = tile;
+      if (tile == tiles - 1 || 2 * pos + 1 <= center)
+        weight[pos] = 0;
+      else
+      {
+        int next = edges[tile + 1] + edges[tile + 2];
+        weight[pos] = (2 * pos + 1 - center) * 256 / (next - center);
+      }
+    }
+  }
+
+  /**
+   * Method to make the lookup table of one tile from its clipped histogram
+   * @param luminance the brightness of every pixel
+   * @param width the width of the picture
+   * @param left the first column of the tile
+   * @param right one past the last column of the tile
+   * @param top the first row of the tile
+   * @param bottom one past the last row of the tile
+   * @param clipLimit the clip limit as a multiple of the average count
+   * @return the new brightness for each old brightness
+   */
+  private static int[] table(byte[] luminance, int width, int left, int right,
+                             int top, int bottom, double clipLimit)
+  {
+    int[] counts = new int[VALUES];
+    for (int row = top; row < bottom; row++)
+      for (int i = row * width + left; i < row * width + right; i++)
+        counts[luminance[i] & 0xff]++;
+    int pixels = (right - left) * (bottom - top);
+
+    if (clipLimit > 0)
+    {
+      int limit = Math.max(1, (int) (clipLimit * pixels / VALUES));
+      int excess = 0;
+      for (int value = 0; value < VALUES; value++)
+      {
+        if (counts[value] > limit)
+        {
+          excess += counts[value] - limit;
+          counts[value] = limit;
+        }
+      }
+      // share the excess out evenly, and what doesn't divide evenly
+      // over values spread across the range
+      int share = excess / VALUES;
+      int remainder = excess % VALUES;
+      for (int value = 0; value < VALUES; value++)
+        counts[value] += share;
+      if (remainder > 0)
+      {
+        int step = VALUES / remainder;
+        for (int value = 0; value < VALUES && remainder > 0; value += step, remainder--)
+          counts[value]++;
+      }
+    }
+
+    int[] table = new int[VALUES];
+    long sum = 0;
+    for (int value = 0; value < VALUES; value++)
+    {
+      sum += counts[value];
+      table[value] = (int) ((sum * (VALUES - 1) + pixels / 2) / pixels);
+    }
+    return table;
+  }
+
+  /**
+   * Method to add the same amount to the red, green and blue of a pixel
+   */
+  private static int shift(int rgb, int amount)
+  {
+    int red = clamp(((rgb >> 16) & 0xff) + amount);
+    int green = clamp(((rgb >> 8) & 0xff) + amount);
+    int blue = clamp((rgb & 0xff) + amount);
+    return (rgb & 0xff000000) | (red << 16) | (green << 8) | blue;
+  }
+
+  /**
+   * Method to keep a color value between 0 and 255
+   */
+  private static int clamp(int value)
+  {
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+  }
+}
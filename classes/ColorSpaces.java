@@ -0,0 +1,444 @@
+import java.awt.Color;
+
+/**
+ * Converts whole pictures between RGB and other ways of describing
+ * color: HSV and HSL (hue, saturation and value or lightness), YCbCr
+ * (brightness and two color differences, as in JPEG) and CIE L*a*b*.
+ *
+ * Lab is made so that the straight-line distance between two colors
+ * (delta E) matches how different they look, which plain RGB distance
+ * does not: two blues 40 apart look far closer than two greens 40
+ * apart.  A delta E of about 2.3 is just noticeable.
+ *
+ * Converted colors are floats, three per pixel one after the other,
+ * in the same order as the pixels.  The slow parts of Lab, undoing the
+ * sRGB gamma and taking cube roots, come from lookup tables, and bands
+ * of rows are converted in parallel.  White is D65, as in sRGB.
+ */
+public class ColorSpaces
+{
+  /** linear light out of 65535 for each sRGB encoded value */
+  static final int[] LINEAR_16 = new int[256];
+
+  /** the sRGB encoded value for each linear light value out of 65535 */
+  static final byte[] ENCODE_16 = new byte[65536];
+
+  /** linear light from 0 to 1 for each sRGB encoded value */
+  private static final float[] LINEAR = new float[256];
+
+  /** the number of steps in the cube root table between 0 and 1 */
+  private static final int CUBE_ROOT_STEPS = 4096;
+
+  /** the Lab f(t) function (a cube root above a small t) at each step */
+  private static final float[] CUBE_ROOT = new float[CUBE_ROOT_STEPS + 2];
+
+  /** below this t the Lab f(t) function is a straight line */
+  private static final double LAB_EPSILON = 216.0 / 24389;
+
+  /** the slope of that straight line */
+  private static final double LAB_KAPPA = 24389.0 / 27 / 116;
+
+  /** the X and Z of the D65 white point (Y is 1) */
+  private static final float WHITE_X = 0.95047f;
+  private static final float WHITE_Z = 1.08883f;
+
+  static
+  {
+    for (int value = 0; value < 256; value++)
+    {
+      double encoded = value / 255.0;
+      double linear = encoded <= 0.04045 ? encoded / 12.92
+        : Math.pow((encoded + 0.055) / 1.055, 2.4);
+      LINEAR[value] = (float) linear;
+      LINEAR_16[value] = (int) Math.round(linear * 65535);
+    }
+    for (int light = 0; light < 65536; light++)
+    {
+      double linear = light / 65535.0;
+      double encoded = linear <= 0.0031308 ? linear * 12.92
+        : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+      ENCODE_16[light] = (byte) Math.round(encoded * 255);
+    }
+    for (int step = 0; step < CUBE_ROOT.length; step++)
+      CUBE_ROOT[step] = (float) labF((double) step / CUBE_ROOT_STEPS);
+  }
+
+  /////////////////////// whole pictures ///////////////////////
+
+  /**
+   * Method to convert a picture to Lab
+   * @param picture the picture to convert
+   * @return L (0 to 100), a and b for every pixel
+   */
+  public static float[] toLab(SimplePicture picture)
+  {
+    return toLab(picture.getBasicPixels(0, 0, picture.getWidth(), picture.getHeight()),
+                 picture.getWidth(), picture.getHeight());
+  }
+
+  /**
+   * Method to convert pixel values to Lab
+   * @param pixels the pixel values in row-major order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return L (0 to 100), a and b for every pixel
+   */
+  public static float[] toLab(int[] pixels, int width, int height)
+  {
+    float[] lab = new float[3 * pixels.length];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+        toLab(pixels[i], lab, 3 * i);
+    });
+    return lab;
+  }
+
+  /**
+   * Method to convert Lab colors back to pixel values
+   * @param lab L, a and b for every pixel
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the opaque pixel values, with colors outside RGB clipped
+   */
+  public static int[] fromLab(float[] lab, int width, int height)
+  {
+    int[] pixels = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+        pixels[i] = fromLab(lab[3 * i], lab[3 * i + 1], lab[3 * i + 2]);
+    });
+    return pixels;
+  }
+
+  /**
+   * Method to convert pixel values to HSV
+   * @param pixels the pixel values in row-major order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return hue (0 up to 360 degrees), saturation and value (0 to 1)
+   * for every pixel
+   */
+  public static float[] toHsv(int[] pixels, int width, int height)
+  {
+    float[] hsv = new float[3 * pixels.length];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+        toHueSpace(pixels[i], hsv, 3 * i, false);
+    });
+    return hsv;
+  }
+
+  /**
+   * Method to convert HSV colors back to pixel values
+   * @param hsv hue, saturation and value for every pixel
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the opaque pixel values
+   */
+  public static int[] fromHsv(float[] hsv, int width, int height)
+  {
+    int[] pixels = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+      {
+        float value = hsv[3 * i + 2];
+        float chroma = value * hsv[3 * i + 1];
+        pixels[i] = fromHue(hsv[3 * i], chroma, value - chroma);
+      }
+    });
+    return pixels;
+  }
+
+  /**
+   * Method to convert pixel values to HSL
+   * @param pixels the pixel values in row-major order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return hue (0 up to 360 degrees), saturation and lightness (0 to 1)
+   * for every pixel
+   */
+  public static float[] toHsl(int[] pixels, int width, int height)
+  {
+    float[] hsl = new float[3 * pixels.length];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+        toHueSpace(pixels[i], hsl, 3 * i, true);
+    });
+    return hsl;
+  }
+
+  /**
+   * Method to convert HSL colors back to pixel values
+   * @param hsl hue, saturation and lightness for every pixel
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the opaque pixel values
+   */
+  public static int[] fromHsl(float[] hsl, int width, int height)
+  {
+    int[] pixels = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+      {
+        float lightness = hsl[3 * i + 2];
+        float chroma = (1 - Math.abs(2 * lightness - 1)) * hsl[3 * i + 1];
+        pixels[i] = fromHue(hsl[3 * i], chroma, lightness - chroma / 2);
+      }
+    });
+    return pixels;
+  }
+
+  /**
+   * Method to convert pixel values to YCbCr as used by JPEG, with all
+   * three from 0 to 255 and Cb and Cr centered on 128
+   * @param pixels the pixel values in row-major order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return Y, Cb and Cr for every pixel
+   */
+  public static float[] toYCbCr(int[] pixels, int width, int height)
+  {
+    float[] ycc = new float[3 * pixels.length];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+      {
+        int rgb = pixels[i];
+        int red = (rgb >> 16) & 0xff;
+        int green = (rgb >> 8) & 0xff;
+        int blue = rgb & 0xff;
+        ycc[3 * i] = 0.299f * red + 0.587f * green + 0.114f * blue;
+        ycc[3 * i + 1] = 128 - 0.168736f * red - 0.331264f * green + 0.5f * blue;
+        ycc[3 * i + 2] = 128 + 0.5f * red - 0.418688f * green - 0.081312f * blue;
+      }
+    });
+    return ycc;
+  }
+
+  /**
+   * Method to convert YCbCr colors back to pixel values
+   * @param ycc Y, Cb and Cr for every pixel
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the opaque pixel values, with colors outside RGB clipped
+   */
+  public static int[] fromYCbCr(float[] ycc, int width, int height)
+  {
+    int[] pixels = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+      {
+        float y = ycc[3 * i];
+        float cb = ycc[3 * i + 1] - 128;
+        float cr = ycc[3 * i + 2] - 128;
+        pixels[i] = pack(y + 1.402f * cr, y - 0.344136f * cb - 0.714136f * cr,
+                         y + 1.772f * cb);
+      }
+    });
+    return pixels;
+  }
+
+  /////////////////////// distances ///////////////////////
+
+  /**
+   * Method to get how different two colors look (CIE76 delta E)
+   * @param lab Lab colors, as made by toLab
+   * @param i the pixel index of one color
+   * @param j the pixel index of the other color
+   * @return the distance in Lab
+   */
+  public static double deltaE(float[] lab, int i, int j)
+  {
+    return Math.sqrt(deltaESquared(lab, i, j));
+  }
+
+  /**
+   * Method to get the square of how different two colors look, which
+   * is enough for comparing against a squared threshold
+   * @param lab Lab colors, as made by toLab
+   * @param i the pixel index of one color
+   * @param j the pixel index of the other color
+   * @return the squared distance in Lab
+   */
+  public static float deltaESquared(float[] lab, int i, int j)
+  {
+    float lightness = lab[3 * i] - lab[3 * j];
+    float a = lab[3 * i + 1] - lab[3 * j + 1];
+    float b = lab[3 * i + 2] - lab[3 * j + 2];
+    return lightness * lightness + a * a + b * b;
+  }
+
+  /**
+   * Method to get how different two colors look (CIE76 delta E), like
+   * Pixel.colorDistance but in Lab
+   * @param color1 one color
+   * @param color2 the other color
+   * @return the distance in Lab
+   */
+  public static double deltaE(Color color1, Color color2)
+  {
+    float[] lab = new float[6];
+    toLab(color1.getRGB(), lab, 0);
+    toLab(color2.getRGB(), lab, 3);
+    return deltaE(lab, 0, 1);
+  }
+
+  /////////////////////// single colors ///////////////////////
+
+  /**
+   * Method to convert one pixel value to Lab
+   * @param rgb the pixel value
+   * @param lab where to put L, a and b
+   * @param offset the index of L in lab
+   */
+  public static void toLab(int rgb, float[] lab, int offset)
+  {
+    float red = LINEAR[(rgb >> 16) & 0xff];
+    float green = LINEAR[(rgb >> 8) & 0xff];
+    float blue = LINEAR[rgb & 0xff];
+    // the rows for X and Z are already divided by the white point
+    float x = 0.4339499f * red + 0.3762098f * green + 0.1898403f * blue;
+    float y = 0.2126729f * red + 0.7151522f * green + 0.0721750f * blue;
+    float z = 0.0177566f * red + 0.1094680f * green + 0.8727755f * blue;
+    float fx = cubeRoot(x);
+    float fy = cubeRoot(y);
+    float fz = cubeRoot(z);
+    lab[offset] = 116 * fy - 16;
+    lab[offset + 1] = 500 * (fx - fy);
+    lab[offset + 2] = 200 * (fy - fz);
+  }
+
+  /**
+   * Method to convert one Lab color to a pixel value
+   * @param lightness L
+   * @param a a
+   * @param b b
+   * @return the opaque pixel value, with colors outside RGB clipped
+   */
+  public static int fromLab(float lightness, float a, float b)
+  {
+    float fy = (lightness + 16) / 116;
+    float x = labInverse(fy + a / 500) * WHITE_X;
+    float y = labInverse(fy);
+    float z = labInverse(fy - b / 200) * WHITE_Z;
+    int red = encode(3.2404542f * x - 1.5371385f * y - 0.4985314f * z);
+    int green = encode(-0.9692660f * x + 1.8760108f * y + 0.0415560f * z);
+    int blue = encode(0.0556434f * x - 0.2040259f * y + 1.0572252f * z);
+    return 0xff000000 | (red << 16) | (green << 8) | blue;
+  }
+
+  /**
+   * Method to convert one pixel value to hue, saturation and value or lightness
+   * @param rgb the pixel value
+   * @param out where to put the three numbers
+   * @param offset the index of the hue in out
+   * @param lightness true for HSL, false for HSV
+   */
+  private static void toHueSpace(int rgb, float[] out, int offset, boolean lightness)
+  {
+    int red = (rgb >> 16) & 0xff;
+    int green = (rgb >> 8) & 0xff;
+    int blue = rgb & 0xff;
+    int max = Math.max(red, Math.max(green, blue));
+    int min = Math.min(red, Math.min(green, blue));
+    int delta = max - min;
+    float hue;
+    if (delta == 0)
+      hue = 0;
+    else if (max == red)
+      hue = 60f * (green - blue) / delta + (green < blue ? 360 : 0);
+    else if (max == green)
+      hue = 60f * (blue - red) / delta + 120;
+    else
+      hue = 60f * (red - green) / delta + 240;
+    out[offset] = hue;
+    if (lightness)
+    {
+      int sum = max + min;
+      out[offset + 1] = delta == 0 ? 0 : (float) delta / (255 - Math.abs(sum - 255));
+      out[offset + 2] = sum / 510f;
+    }
+    else
+    {
+      out[offset + 1] = max == 0 ? 0 : (float) delta / max;
+      out[offset + 2] = max / 255f;
+    }
+  }
+
+  /**
+   * Method to make a pixel value from a hue, a chroma and the amount
+   * added to every channel; shared by HSV and HSL
+   */
+  private static int fromHue(float hue, float chroma, float base)
+  {
+    float sector = ((hue % 360 + 360) % 360) / 60;
+    float second = chroma * (1 - Math.abs(sector % 2 - 1));
+    float red, green, blue;
+    switch ((int) sector)
+    {
+      case 0: red = chroma; green = second; blue = 0; break;
+      case 1: red = second; green = chroma; blue = 0; break;
+      case 2: red = 0; green = chroma; blue = second; break;
+      case 3: red = 0; green = second; blue = chroma; break;
+      case 4: red = second; green = 0; blue = chroma; break;
+      default: red = chroma; green = 0; blue = second; break;
+    }
+    return pack(255 * (red + base), 255 * (green + base), 255 * (blue + base));
+  }
+
+  /**
+   * Method to round and clip three channel values into an opaque pixel value
+   */
+  private static int pack(float red, float green, float blue)
+  {
+    return 0xff000000 | (clip(red) << 16) | (clip(green) << 8) | clip(blue);
+  }
+
+  /**
+   * Method to round a channel value and keep it between 0 and 255
+   */
+  private static int clip(float value)
+  {
+    int rounded = Math.round(value);
+    return rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded);
+  }
+
+  /**
+   * Method to gamma encode linear light, clipped to 0 to 1
+   */
+  private static int encode(float linear)
+  {
+    if (linear <= 0)
+      return 0;
+    if (linear >= 1)
+      return 255;
+    return ENCODE_16[Math.round(linear * 65535)] & 0xff;
+  }
+
+  /**
+   * Method to get the Lab f(t) from the table, reading between steps
+   */
+  private static float cubeRoot(float t)
+  {
+    float position = Math.max(0, Math.min(t, 1)) * CUBE_ROOT_STEPS;
+    int step = (int) position;
+    float between = position - step;
+    return CUBE_ROOT[step] + between * (CUBE_ROOT[step + 1] - CUBE_ROOT[step]);
+  }
+
+  /**
+   * Method to work out the Lab f(t) exactly
+   */
+  private static double labF(double t)
+  {
+    return t > LAB_EPSILON ? Math.cbrt(t) : LAB_KAPPA * t + 16.0 / 116;
+  }
+
+  /**
+   * Method to undo the Lab f(t)
+   */
+  private static float labInverse(float f)
+  {
+    float cube = f * f * f;
+    return cube > LAB_EPSILON ? cube : (float) ((f - 16.0 / 116) / LAB_KAPPA);
+  }
+}
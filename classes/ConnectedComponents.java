@@ -0,0 +1,246 @@
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Finds the connected regions of foreground pixels in a BinaryImage,
+ * numbers them 1, 2, 3 and so on (0 is background) and measures each
+ * one: its area, bounding box and centroid.
+ *
+ * Labelling is the classic two-pass union-find.  The first pass runs on
+ * parallel bands of rows; each band hands out provisional labels from
+ * its own range and records which ones touch, without ever looking
+ * above its first row.  The bands are then joined by checking only the
+ * first row of each band against the row above it.  A single sweep
+ * over the label table turns every provisional label into its final
+ * number, and the second pass writes the final numbers and gathers the
+ * statistics.  Nothing is recursive, so any size of region is fine.
+ */
+public class ConnectedComponents
+{
+  /** the width and height of the image */
+  private final int width;
+  private final int height;
+
+  /** the final label of every pixel in row-major order */
+  private final int[] labels;
+
+  /** the number of regions */
+  private final int count;
+
+  /** statistics of every region, indexed by label */
+  private final int[] area;
+  private final int[] minX;
+  private final int[] minY;
+  private final int[] maxX;
+  private final int[] maxY;
+  private final long[] sumX;
+  private final long[] sumY;
+
+  /**
+   * Constructor that labels the regions of a binary image
+   * @param image the image to label
+   * @param eightConnected true if diagonal neighbours connect, false
+   * for only the four direct neighbours
+   */
+  public ConnectedComponents(BinaryImage image, boolean eightConnected)
+  {
+    width = image.getWidth();
+    height = image.getHeight();
+    labels = new int[width * height];
+
+    // provisional labels are unions of trees in parent; a band starting
+    // at row r hands out labels from r * width + 1, so bands never clash,
+    // and every tree's root is its smallest label
+    int[] parent = new int[width * height + 1];
+    boolean[] bandStart = new boolean[height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      bandStart[startRow] = true;
+      int next = startRow * width + 1;
+      for (int row = startRow; row < endRow; row++)
+      {
+        for (int col = 0; col < width; col++)
+        {
+          if (!image.get(col, row))
+            continue;
+          int i = row * width + col;
+          int label = 0;
+          if (col > 0)
+            label = join(parent, label, labels[i - 1]);
+          if (row > startRow)
+          {
+            label = join(parent, label, labels[i - width]);
+            if (eightConnected)
+            {
+              if (col > 0)
+                label = join(parent, label, labels[i - width - 1]);
+              if (col < width - 1)
+                label = join(parent, label, labels[i - width + 1]);
+            }
+          }
+          if (label == 0)
+          {
+            label = next++;
+            parent[label] = label;
+          }
+          labels[i] = label;
+        }
+      }
+    });
+
+    // join each band to the band above it
+    for (int row = 1; row < height; row++)
+    {
+      if (!bandStart[row])
+        continue;
+      for (int col = 0; col < width; col++)
+      {
+        int i = row * width + col;
+        if (labels[i] == 0)
+          continue;
+        join(parent, labels[i], labels[i - width]);
+        if (eightConnected)
+        {
+          if (col > 0)
+            join(parent, labels[i], labels[i - width - 1]);
+          if (col < width - 1)
+            join(parent, labels[i], labels[i - width + 1]);
+        }
+      }
+    }
+
+    // parents are always smaller labels, so one sweep in increasing order
+    // numbers the roots and points every other label at its root's number
+    int regions = 0;
+    for (int label = 1; label < parent.length; label++)
+    {
+      if (parent[label] == 0)
+        continue;
+      if (parent[label] == label)
+        parent[label] = -(++regions);
+      else
+        parent[label] = parent[parent[label]];
+    }
+    count = regions;
+
+    area = new int[count + 1];
+    minX = new int[count + 1];
+    minY = new int[count + 1];
+    maxX = new int[count + 1];
+    maxY = new int[count + 1];
+    sumX = new long[count + 1];
+    sumY = new long[count + 1];
+    Arrays.fill(minX, Integer.MAX_VALUE);
+    Arrays.fill(minY, Integer.MAX_VALUE);
+    for (int row = 0; row < height; row++)
+    {
+      for (int col = 0; col < width; col++)
+      {
+        int i = row * width + col;
+        if (labels[i] == 0)
+          continue;
+        int label = -parent[labels[i]];
+        labels[i] = label;
+        area[label]++;
+        minX[label] = Math.min(minX[label], col);
+        minY[label] = Math.min(minY[label], row);
+        maxX[label] = Math.max(maxX[label], col);
+        maxY[label] = Math.max(maxY[label], row);
+        sumX[label] += col;
+        sumY[label] += row;
+      }
+    }
+  }
+
+  /**
+   * Method to get the number of regions
+   * @return the number of regions; labels go from 1 to this number
+   */
+  public int getCount() { return count; }
+
+  /**
+   * Method to get the label of a pixel
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @return the label of the pixel's region, or 0 for background
+   */
+  public int getLabel(int x, int y)
+  {
+    return labels[y * width + x];
+  }
+
+  /**
+   * Method to get the labels of all pixels.  The array is shared, not copied.
+   * @return the labels in row-major order
+   */
+  public int[] getLabels() { return labels; }
+
+  /**
+   * Method to get the number of pixels in a region
+   * @param label the label of the region
+   * @return the area in pixels
+   */
+  public int getArea(int label) { return area[label]; }
+
+  /**
+   * Method to get the smallest rectangle holding a region
+   * @param label the label of the region
+   * @return the bounding box
+   */
+  public Rectangle getBounds(int label)
+  {
+    return new Rectangle(minX[label], minY[label],
+                         maxX[label] - minX[label] + 1, maxY[label] - minY[label] + 1);
+  }
+
+  /**
+   * Method to get the average column of a region's pixels
+   * @param label the label of the region
+   * @return the x coordinate of the centroid
+   */
+  public double getCentroidX(int label) { return (double) sumX[label] / area[label]; }
+
+  /**
+   * Method to get the average row of a region's pixels
+   * @param label the label of the region
+   * @return the y coordinate of the centroid
+   */
+  public double getCentroidY(int label) { return (double) sumY[label] / area[label]; }
+
+  /**
+   * Method to join two provisional labels, either of which may be 0
+   * for no label, keeping the smaller root as the root of both
+   * @param parent the union-find table
+   * @param a one label
+   * @param b the other label
+   * @return the root of the joined labels, or 0 if both were 0
+   */
+  private static int join(int[] parent, int a, int b)
+  {
+    if (b == 0)
+      return a == 0 ? 0 : find(parent, a);
+    if (a == 0)
+      return find(parent, b);
+    int rootA = find(parent, a);
+    int rootB = find(parent, b);
+    if (rootA < rootB)
+    {
+      parent[rootB] = rootA;
+      return rootA;
+    }
+    parent[rootA] = rootB;
+    return rootB;
+  }
+
+  /**
+   * Method to find the root of a label, halving the path on the way
+   */
+  private static int find(int[] parent, int label)
+  {
+    while (parent[label] != label)
+    {
+      parent[label] = parent[parent[label]];
+      label = parent[label];
+    }
+    return label;
+  }
+}
@@ -0,0 +1,200 @@
+import java.util.Arrays;
+
+/**
+ * Applies a ConvolutionKernel to the red, green and blue of every pixel.
+ * The kernel is laid over each pixel's neighbourhood as given (it is
+ * not flipped), its center on the pixel, and the weighted sum becomes
+ * the new value, rounded and kept within 0 to 255.  Alpha is left as
+ * it was.
+ *
+ * Separable kernels are applied as a horizontal and a vertical pass.
+ * Both passes, and the direct 2-D path used for other kernels, work
+ * on parallel bands of rows.  Neighbours off the picture are found
+ * through a BorderMode index table built once per call, so the inner
+ * loops never test for the edge.
+ */
+public class Convolution
+{
+  /**
+   * Method to convolve a picture with a kernel and put the result
+   * back into the picture
+   * @param picture the picture to filter
+   * @param kernel the weights to use
+   * @param borderMode how to find neighbours off the picture
+   */
+  public static void apply(SimplePicture picture, ConvolutionKernel kernel,
+                           BorderMode borderMode)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    int[] result = apply(pixels, width, height, kernel, borderMode);
+    picture.setBasicPixels(0, 0, width, height, result);
+  }
+
+  /**
+   * Method to convolve an array of pixel values with a kernel
+   * @param pixels the pixel values (alpha, red, green, blue) in row-major order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param kernel the weights to use
+   * @param borderMode how to find neighbours off the image
+   * @return a new array with the filtered pixel values
+   */
+  public static int[] apply(int[] pixels, int width, int height,
+                            ConvolutionKernel kernel, BorderMode borderMode)
+  {
+    int centerX = kernel.getWidth() / 2;
+    int centerY = kernel.getHeight() / 2;
+    int[] columns = borderMode.indexTable(width, centerX, kernel.getWidth() - 1 - centerX);
+    int[] rows = borderMode.indexTable(height, centerY, kernel.getHeight() - 1 - centerY);
+    if (kernel.isSeparable())
+      return applySeparable(pixels, width, height, kernel, columns, rows);
+    return applyDirect(pixels, width, height, kernel, columns, rows);
+  }
+
+  /**
+   * Method to apply a separable kernel as two 1-D passes.  The
+   * horizontal pass keeps its sums as floats so nothing is lost to
+   * rounding before the vertical pass.
+   */
+  private static int[] applySeparable(int[] pixels, int width, int height,
+                                      ConvolutionKernel kernel,
+                                      int[] columns, int[] rows)
+  {
+    float[] rowWeights = kernel.getRowWeights();
+    float[] columnWeights = kernel.getColumnWeights();
+    int size = width * height;
+    float[] red = new float[size];
+    float[] green = new float[size];
+    float[] blue = new float[size];
+
+    // horizontal pass
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        int rowStart = row * width;
+        for (int col = 0; col < width; col++)
+        {
+          float r = 0;
+          float g = 0;
+          float b = 0;
+          for (int k = 0; k < rowWeights.length; k++)
+          {
+            int rgb = pixels[rowStart + columns[col + k]];
+            float weight = rowWeights[k];
+            r += ((rgb >> 16) & 0xff) * weight;
+            g += ((rgb >> 8) & 0xff) * weight;
+            b += (rgb & 0xff) * weight;
+          }
+          red[rowStart + col] = r;
+          green[rowStart + col] = g;
+          blue[rowStart + col] = b;
+        }
+      }
+    });
+
+    // vertical pass, adding whole source rows so memory is read in order
+    int[] result = new int[size];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      float[] sumRed = new float[width];
+      float[] sumGreen = new float[width];
+      float[] sumBlue = new float[width];
+      for (int row = startRow; row < endRow; row++)
+      {
+        Arrays.fill(sumRed, 0);
+        Arrays.fill(sumGreen, 0);
+        Arrays.fill(sumBlue, 0);
+        for (int k = 0; k < columnWeights.length; k++)
+        {
+          int source = rows[row + k] * width;
+          float weight = columnWeights[k];
+          for (int col = 0; col < width; col++)
+          {
+            sumRed[col] += red[source + col] * weight;
+            sumGreen[col] += green[source + col] * weight;
+            sumBlue[col] += blue[source + col] * weight;
+          }
+        }
+        int rowStart = row * width;
+        for (int col = 0; col < width; col++)
+          result[rowStart + col] = pack(pixels[rowStart + col],
+                                        sumRed[col], sumGreen[col], sumBlue[col]);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Method to apply a kernel that isn't separable, one kernel weight
+   * at a time across a whole row.  Zero weights are skipped.
+   */
+  private static int[] applyDirect(int[] pixels, int width, int height,
+                                   ConvolutionKernel kernel,
+                                   int[] columns, int[] rows)
+  {
+    int kernelWidth = kernel.getWidth();
+    float[] weights = kernel.getWeights();
+    int[] result = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      float[] sumRed = new float[width];
+      float[] sumGreen = new float[width];
+      float[] sumBlue = new float[width];
+      for (int row = startRow; row < endRow; row++)
+      {
+        Arrays.fill(sumRed, 0);
+        Arrays.fill(sumGreen, 0);
+        Arrays.fill(sumBlue, 0);
+        for (int k = 0; k < weights.length; k++)
+        {
+          float weight = weights[k];
+          if (weight == 0)
+            continue;
+          int source = rows[row + k / kernelWidth] * width;
+          int offset = k % kernelWidth;
+          for (int col = 0; col < width; col++)
+          {
+            int rgb = pixels[source + columns[col + offset]];
+            sumRed[col] += ((rgb >> 16) & 0xff) * weight;
+            sumGreen[col] += ((rgb >> 8) & 0xff) * weight;
+            sumBlue[col] += (rgb & 0xff) * weight;
+          }
+        }
+        int rowStart = row * width;
+        for (int col = 0; col < width; col++)
+          result[rowStart + col] = pack(pixels[rowStart + col],
+                                        sumRed[col], sumGreen[col], sumBlue[col]);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Method to make a pixel value from filtered colors, keeping the
+   * alpha of the original pixel
+   * @param original the original pixel value
+   * @param red the filtered red
+   * @param green the filtered green
+   * @param blue the filtered blue
+   * @return the new pixel value
+   */
+  private static int pack(int original, float red, float green, float blue)
+  {
+    return (original & 0xff000000) | (clamp(red) << 16) | (clamp(green) << 8) | clamp(blue);
+  }
+
+  /**
+   * Method to round a filtered value and keep it within 0 to 255
+   * @param value the filtered value
+   * @return the color value
+   */
+  private static int clamp(float value)
+  {
+    int rounded = Math.round(value);
+    if (rounded < 0)
+      return 0;
+    if (rounded > 255)
+      return 255;
+    return rounded;
+  }
+}
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+
+/**
+ * A grid of weights for a convolution filter.  The kernel is centred
+ * on the pixel being filtered: for a kernel of width w the center
+ * column is w / 2, and the same for the rows.
+ *
+ * When the kernel is created it checks whether it is separable, that
+ * is, whether every weight is a column weight times a row weight.  A
+ * separable kernel can be applied as a horizontal pass followed by a
+ * vertical pass, which costs w + h per pixel instead of w * h.
+ */
+public class ConvolutionKernel
+{
+  /** how close to a product the weights have to be to count as separable */
+  private static final double SEPARABLE_TOLERANCE = 1e-6;
+
+  /** the width and height of the kernel */
+  private final int width;
+  private final int height;
+
+  /** the weights in row-major order */
+  private final float[] weights;
+
+  /** the row and column factors, or null if the kernel isn't separable */
+  private float[] rowWeights;
+  private float[] columnWeights;
+
+  /**
+   * Constructor that takes the weights of the kernel
+   * @param width the number of columns of weights
+   * @param height the number of rows of weights
+   * @param weights the weights in row-major order
+   */
+  public ConvolutionKernel(int width, int height, float[] weights)
+  {
+    if (width <= 0 || height <= 0 || weights.length != width * height)
+      throw new IllegalArgumentException("A " + width + "x" + height
+                                         + " kernel needs " + (width * height) + " weights");
+    this.width = width;
+    this.height = height;
+    this.weights = weights.clone();
+    findFactors();
+  }
+
+  /**
+   * Constructor for a separable kernel given by its factors
+   * @param rowWeights the weights along a row (the kernel width)
+   * @param columnWeights the weights down a column (the kernel height)
+   */
+  public ConvolutionKernel(float[] rowWeights, float[] columnWeights)
+  {
+    this(rowWeights.length, columnWeights.length, outerProduct(rowWeights, columnWeights));
+  }
+
+  /**
+   * Method to make a kernel that averages a square of pixels
+   * @param radius how many pixels on each side of the center to use
+   * @return the box kernel
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  public static ConvolutionKernel box(int radius)
+  {
+    if (radius < 0)
+      throw new IllegalArgumentException("The radius must not be negative, not " + radius);
+    float[] factor = new float[2 * radius + 1];
+    Arrays.fill(factor, 1.0f / factor.length);
+    return new ConvolutionKernel(factor, factor);
+  }
+
+  /**
+   * Method to make a Gaussian blur kernel.  It reaches three standard
+   * deviations from the center, past which the weights are negligible.
+   * @param sigma the standard deviation in pixels
+   * @return the Gaussian kernel
+   * @throws IllegalArgumentException if sigma is not more than 0
+   */
+  public static ConvolutionKernel gaussian(double sigma)
+  {
+    if (!(sigma > 0))
+      throw new IllegalArgumentException("Sigma must be more than 0, not " + sigma);
+    int radius = Math.max(1, (int) Math.ceil(3 * sigma));
+    float[] factor = new float[2 * radius + 1];
+    double total = 0;
+    for (int i = -radius; i <= radius; i++)
+    {
+      double weight = Math.exp(-(i * i) / (2 * sigma * sigma));
+      factor[i + radius] = (float) weight;
+      total += weight;
+    }
+    for (int i = 0; i < factor.length; i++)
+      factor[i] /= total;
+    return new ConvolutionKernel(factor, factor);
+  }
+
+  /**
+   * Method to make a 3x3 kernel that sharpens by subtracting the four
+   * direct neighbours from the center pixel
+   * @return the sharpen kernel
+   */
+  public static ConvolutionKernel sharpen()
+  {
+    return new ConvolutionKernel(3, 3, new float[] {
+       0, -1,  0,
+      -1,  5, -1,
+       0, -1,  0 });
+  }
+
+  /**
+   * Method to get the width of the kernel
+   * @return the number of columns of weights
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the kernel
+   * @return the number of rows of weights
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get one weight of the kernel
+   * @param col the column of the weight
+   * @param row the row of the weight
+   * @return the weight
+   */
+  public float getWeight(int col, int row)
+  {
+    return weights[row * width + col];
+  }
+
+  /**
+   * Method to check if the kernel can be applied as two 1-D passes
+   * @return true if the kernel is separable
+   */
+  public boolean isSeparable()
+  {
+    return rowWeights != null;
+  }
+
+  /**
+   * Method to get the weights of the horizontal pass
+   * @return a copy of the row factor, or null if not separable
+   */
+  public float[] getRowWeights()
+  {
+    return rowWeights == null ? null : rowWeights.clone();
+  }
+
+  /**
+   * Method to get the weights of the vertical pass
+   * @return a copy of the column factor, or null if not separable
+   */
+  public float[] getColumnWeights()
+  {
+    return columnWeights == null ? null : columnWeights.clone();
+  }
+
+  /**
+   * Method to get all the weights.  The array is shared, not copied.
+   * @return the weights in row-major order
+   */
+  float[] getWeights() { return weights; }
+
+  /**
+   * Method to split the kernel into a column and a row factor if it is
+   * the product of the two.  The row and column through the largest
+   * weight are the candidates; dividing the row by that weight makes
+   * their product give back the kernel exactly when it is separable.
+   */
+  private void findFactors()
+  {
+    int pivot = 0;
+    for (int i = 1; i < weights.length; i++)
+    {
+      if (Math.abs(weights[i]) > Math.abs(weights[pivot]))
+        pivot = i;
+    }
+    float largest = weights[pivot];
+    if (largest == 0)
+      return;
+
+    int pivotRow = pivot / width;
+    int pivotCol = pivot % width;
+    float[] row = new float[width];
+    float[] column = new float[height];
+    for (int col = 0; col < width; col++)
+      row[col] = weights[pivotRow * width + col] / largest;
+    for (int r = 0; r < height; r++)
+      column[r] = weights[r * width + pivotCol];
+
+    double tolerance = SEPARABLE_TOLERANCE * Math.abs(largest);
+    for (int r = 0; r < height; r++)
+    {
+      for (int col = 0; col < width; col++)
+      {
+        if (Math.abs(weights[r * width + col] - column[r] * row[col]) > tolerance)
+          return;
+      }
+    }
+    rowWeights = row;
+    columnWeights = column;
+  }
+
+  /**
+   * Method to multiply a row and a column into a grid of weights
+   * @param row the row factor
+   * @param column the column factor
+   * @return the weights in row-major order
+   */
+  private static float[] outerProduct(float[] row, float[] column)
+  {
+    float[] product = new float[row.length * column.length];
+    for (int r = 0; r < column.length; r++)
+      for (int col = 0; col < row.length; col++)
+        product[r * row.length + col] = column[r] * row[col];
+    return product;
+  }
+}
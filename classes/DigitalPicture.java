@@ -22,6 +22,10 @@ public interface DigitalPicture
   public BufferedImage getBufferedImage(); // get the buffered image
   public int getBasicPixel(int x, int y); // get the pixel information as an int   
   public void setBasicPixel(int x, int y, int rgb); // set the pixel information
+  public int[] getBasicPixels(int x, int y, int width, int height); // get a rectangle of pixel information
+  public void setBasicPixels(int x, int y, int width, int height, int[] rgb); // set a rectangle of pixel information
+  public long getVersion(); // get the modification version, increased on every write
+  public DirtyRegion getDirtyRegion(); // get the parts of the picture that changed
   public Pixel getPixel(int x, int y); // get the pixel information as an object
   public Pixel[] getPixels(); // get all pixels in row-major order
   public Pixel[][] getPixels2D(); // get 2-D array of pixels in row-major order
@@ -0,0 +1,183 @@
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A short list of rectangles that together cover every part of a
+ * picture that has changed.  Rectangles are coalesced as they are
+ * added, so writing a run of neighbouring pixels (a row, a column or
+ * a whole block) ends up as one rectangle instead of one per pixel.
+ * The list never grows past a fixed size; when it would, the two
+ * rectangles that are cheapest to combine are merged.
+ *
+ * All methods are synchronized so pictures can be marked dirty from
+ * several threads at once.
+ */
+public class DirtyRegion
+{
+  /** the most rectangles kept before the closest pair is merged */
+  private static final int MAX_RECTANGLES = 16;
+
+  /** the changed rectangles, most recently grown last */
+  private final List<Rectangle> rectangles = new ArrayList<Rectangle>();
+
+  /**
+   * Method to add a changed rectangle to the region
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param width the width of the rectangle
+   * @param height the height of the rectangle
+   */
+  public synchronized void add(int x, int y, int width, int height)
+  {
+    if (width <= 0 || height <= 0)
+      return;
+
+    // the common case: writing inside the rectangle we just grew
+    int size = rectangles.size();
+    if (size > 0 && rectangles.get(size - 1).contains(x, y, width, height))
+      return;
+
+    // keep absorbing rectangles until nothing else is worth merging
+    Rectangle added = new Rectangle(x, y, width, height);
+    boolean merged = true;
+    while (merged)
+    {
+      merged = false;
+      for (int i = rectangles.size() - 1; i >= 0; i--)
+      {
+        Rectangle rect = rectangles.get(i);
+        if (mergeCost(rect, added) <= Math.max(area(rect), area(added)))
+        {
+          added = added.union(rect);
+          rectangles.remove(i);
+          merged = true;
+        }
+      }
+    }
+    rectangles.add(added);
+
+    if (rectangles.size() > MAX_RECTANGLES)
+      mergeClosestPair();
+  }
+
+  /**
+   * Method to add a changed rectangle to the region
+   * @param rect the rectangle that changed
+   */
+  public void add(Rectangle rect)
+  {
+    add(rect.x, rect.y, rect.width, rect.height);
+  }
+
+  /**
+   * Method to check if anything has changed
+   * @return true if the region holds no rectangles
+   */
+  public synchronized boolean isEmpty()
+  {
+    return rectangles.isEmpty();
+  }
+
+  /**
+   * Method to get one rectangle that covers the whole region
+   * @return the bounding rectangle or null if the region is empty
+   */
+  public synchronized Rectangle getBounds()
+  {
+    Rectangle bounds = null;
+    for (Rectangle rect : rectangles)
+    {
+      if (bounds == null)
+        bounds = new Rectangle(rect);
+      else
+        bounds.add(rect);
+    }
+    return bounds;
+  }
+
+  /**
+   * Method to get a copy of the rectangles in the region
+   * @return a list of the changed rectangles
+   */
+  public synchronized List<Rectangle> getRectangles()
+  {
+    List<Rectangle> copy = new ArrayList<Rectangle>(rectangles.size());
+    for (Rectangle rect : rectangles)
+      copy.add(new Rectangle(rect));
+    return copy;
+  }
+
+  /**
+   * Method to get the rectangles in the region and empty it in
+   * one step, so that no change made in between is lost
+   * @return a list of the changed rectangles
+   */
+  public synchronized List<Rectangle> takeRectangles()
+  {
+    List<Rectangle> taken = new ArrayList<Rectangle>(rectangles);
+    rectangles.clear();
+    return taken;
+  }
+
+  /**
+   * Method to empty the region
+   */
+  public synchronized void clear()
+  {
+    rectangles.clear();
+  }
+
+  /**
+   * Method to merge the two rectangles whose union adds the least
+   * unchanged area to the region
+   */
+  private void mergeClosestPair()
+  {
+    int bestI = 0;
+    int bestJ = 1;
+    long bestCost = Long.MAX_VALUE;
+    for (int i = 0; i < rectangles.size(); i++)
+    {
+      for (int j = i + 1; j < rectangles.size(); j++)
+      {
+        long cost = mergeCost(rectangles.get(i), rectangles.get(j));
+        if (cost < bestCost)
+        {
+          bestCost = cost;
+          bestI = i;
+          bestJ = j;
+        }
+      }
+    }
+    Rectangle merged = rectangles.get(bestI).union(rectangles.get(bestJ));
+    rectangles.remove(bestJ);
+    rectangles.remove(bestI);
+    rectangles.add(merged);
+  }
+
+  /**
+   * Method to compute how much unchanged area a union of two
+   * rectangles would add to the region
+   * @param a one rectangle
+   * @param b the other rectangle
+   * @return the area of the union not covered by either rectangle
+   */
+  private static long mergeCost(Rectangle a, Rectangle b)
+  {
+    long covered = area(a) + area(b) - area(a.intersection(b));
+    return area(a.union(b)) - covered;
+  }
+
+  /**
+   * Method to get the area of a rectangle
+   * @param rect the rectangle
+   * @return the area, or 0 for an empty rectangle
+   */
+  private static long area(Rectangle rect)
+  {
+    if (rect.width <= 0 || rect.height <= 0)
+      return 0;
+    return (long) rect.width * rect.height;
+  }
+}
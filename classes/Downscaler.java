@@ -0,0 +1,290 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Makes smaller copies of pictures.  Drawing a picture smaller with
+ * Graphics2D picks one source pixel for each new pixel and skips the
+ * rest, so fine detail turns into jagged noise, and it is slow for big
+ * reductions.  Here every new pixel is the average of all the source
+ * pixels it covers, which is done in two steps:
+ *
+ * 1. A box reduction by the largest whole-number factor that keeps the
+ * picture at least as big as wanted.  Each pixel of the smaller picture
+ * is the plain average of a block of source pixels, which needs only
+ * integer adds.
+ *
+ * 2. An area resample for the rest of the way, which is less than a
+ * factor of two.  Each new pixel covers at most three pixels across and
+ * three down, weighted by how much of each it covers.
+ *
+ * Both steps go one direction at a time with whole-number weights, are
+ * done in parallel bands of rows, and the result is written straight
+ * into the new picture's raster.
+ */
+public class Downscaler
+{
+  /** fixed-point scale of the area weights (14 bits) */
+  private static final int ONE = 1 << 14;
+
+  /** extra bits kept between the across and down passes */
+  private static final int EXTRA_BITS = 8;
+
+  /**
+   * the largest block averaged with a fixed-point inverse; past 2^24
+   * pixels its rounding error can reach half a step
+   */
+  private static final long MAX_FIXED_BLOCK = 1L << 24;
+
+  /**
+   * Method to make a smaller copy of a picture
+   * @param picture the picture to copy
+   * @param width the width of the copy, from 1 to the picture's width
+   * @param height the height of the copy, from 1 to the picture's height
+   * @return the smaller picture
+   */
+  public static Picture scale(SimplePicture picture, int width, int height)
+  {
+    int sourceWidth = picture.getWidth();
+    int sourceHeight = picture.getHeight();
+    if (width < 1 || height < 1 || width > sourceWidth || height > sourceHeight)
+      throw new IllegalArgumentException("cannot shrink a " + sourceWidth + "x" + sourceHeight
+                                         + " picture to " + width + "x" + height);
+
+    // step 1: whole-number box reduction
+    int boxWidth = sourceWidth / (sourceWidth / width);
+    int boxHeight = sourceHeight / (sourceHeight / height);
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] target = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    if (boxWidth == width && boxHeight == height)
+    {
+      // a whole-number reduction needs no second step
+      boxReduce(picture, width, height, target);
+      return new Picture(image);
+    }
+    int[] reduced;
+    if (boxWidth == sourceWidth && boxHeight == sourceHeight)
+      reduced = picture.getBasicPixels(0, 0, sourceWidth, sourceHeight);
+    else
+    {
+      reduced = new int[boxWidth * boxHeight];
+      boxReduce(picture, boxWidth, boxHeight, reduced);
+    }
+
+    // step 2: area resample to the exact size
+    resample(reduced, boxWidth, boxHeight, target, width, height);
+    return new Picture(image);
+  }
+
+  /**
+   * Method to shrink a picture by averaging blocks of pixels.  The
+   * blocks are all the same size give or take one pixel, so no source
+   * pixel is left out.
+   * @param picture the picture to shrink
+   * @param width the width to shrink to
+   * @param height the height to shrink to
+   * @param result where to put the pixels of the shrunk picture
+   */
+  private static void boxReduce(SimplePicture picture, int width, int height, int[] result)
+  {
+    int sourceWidth = picture.getWidth();
+    int[] xEdges = edges(sourceWidth, width);
+    int[] yEdges = edges(picture.getHeight(), height);
+    int narrow = sourceWidth / width;
+    ParallelRows.forEachBand(height, 1, (startRow, endRow) -> {
+      // long, since a block of a big picture shrunk to a few pixels can
+      // total more than an int holds
+      long[] red = new long[width];
+      long[] green = new long[width];
+      long[] blue = new long[width];
+      for (int row = startRow; row < endRow; row++)
+      {
+        int top = yEdges[row];
+        int rows = yEdges[row + 1] - top;
+        int[] source = picture.getBasicPixels(0, top, sourceWidth, rows);
+        Arrays.fill(red, 0);
+        Arrays.fill(green, 0);
+        Arrays.fill(blue, 0);
+        for (int y = 0; y < rows; y++)
+        {
+          int i = y * sourceWidth;
+          for (int col = 0; col < width; col++)
+          {
+            long r = 0, g = 0, b = 0;
+            for (int end = y * sourceWidth + xEdges[col + 1]; i < end; i++)
+            {
+              int rgb = source[i];
+              r += (rgb >> 16) & 0xff;
+              g += (rgb >> 8) & 0xff;
+              b += rgb & 0xff;
+            }
+            red[col] += r;
+            green[col] += g;
+            blue[col] += b;
+          }
+        }
+        // divide by the block size with one multiply per channel; blocks
+        // are either narrow or one pixel wider
+        long narrowCount = (long) rows * narrow;
+        long wideCount = narrowCount + rows;
+        long narrowInverse = inverse(narrowCount);
+        long wideInverse = inverse(wideCount);
+        for (int col = 0; col < width; col++)
+        {
+          boolean isNarrow = xEdges[col + 1] - xEdges[col] == narrow;
+          long count = isNarrow ? narrowCount : wideCount;
+          long inverse = isNarrow ? narrowInverse : wideInverse;
+          result[row * width + col] = 0xff000000
+            | average(red[col], count, inverse) << 16
+            | average(green[col], count, inverse) << 8
+            | average(blue[col], count, inverse);
+        }
+      }
+    });
+  }
+
+  /**
+   * Method to divide the total of a block by its size, rounded.  Up to
+   * MAX_FIXED_BLOCK pixels the fixed-point inverse is close enough;
+   * bigger blocks, which only come from shrinking to a few pixels,
+   * divide.
+   * @param sum the total of a channel over the block
+   * @param count the number of pixels in the block
+   * @param inverse 1 / count from inverse(count)
+   * @return the average, from 0 to 255
+   */
+  private static int average(long sum, long count, long inverse)
+  {
+    if (count > MAX_FIXED_BLOCK)
+      return (int) ((sum + count / 2) / count);
+    return (int) Math.min(255, (sum * inverse + (1L << 31)) >>> 32);
+  }
+
+  /**
+   * Method to get 1 / count in 32-bit fixed point
+   */
+  private static long inverse(long count)
+  {
+    return ((1L << 32) + count / 2) / count;
+  }
+
+  /**
+   * Method to resample pixels to a size no more than a factor of two
+   * smaller by averaging the area each new pixel covers
+   * @param source the pixels to resample
+   * @param sourceWidth the width of the source
+   * @param sourceHeight the height of the source
+   * @param target where to put the new pixels
+   * @param width the new width
+   * @param height the new height
+   */
+  private static void resample(int[] source, int sourceWidth, int sourceHeight,
+                               int[] target, int width, int height)
+  {
+    int[] xFirst = new int[width];
+    int[] xWeights = new int[width * 3];
+    weights(sourceWidth, width, xFirst, xWeights);
+    int[] yFirst = new int[height];
+    int[] yWeights = new int[height * 3];
+    weights(sourceHeight, height, yFirst, yWeights);
+
+    // each band first takes the source rows it needs across to the new
+    // width (keeping extra bits), then combines them down
+    int shift = 14 + EXTRA_BITS;
+    int half = 1 << (shift - 1);
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      int firstRow = yFirst[startRow];
+      int rows = Math.min(yFirst[endRow - 1] + 3, sourceHeight) - firstRow;
+      int[] red = new int[width * rows];
+      int[] green = new int[width * rows];
+      int[] blue = new int[width * rows];
+      for (int row = 0; row < rows; row++)
+      {
+        int rowStart = (firstRow + row) * sourceWidth;
+        int last = rowStart + sourceWidth - 1;
+        for (int col = 0; col < width; col++)
+        {
+          int i = rowStart + xFirst[col];
+          int w0 = xWeights[3 * col];
+          int w1 = xWeights[3 * col + 1];
+          int w2 = xWeights[3 * col + 2];
+          int p0 = source[i];
+          int p1 = source[Math.min(i + 1, last)];
+          int p2 = source[Math.min(i + 2, last)];
+          int j = row * width + col;
+          red[j] = (w0 * ((p0 >> 16) & 0xff) + w1 * ((p1 >> 16) & 0xff) + w2 * ((p2 >> 16) & 0xff))
+            >> (14 - EXTRA_BITS);
+          green[j] = (w0 * ((p0 >> 8) & 0xff) + w1 * ((p1 >> 8) & 0xff) + w2 * ((p2 >> 8) & 0xff))
+            >> (14 - EXTRA_BITS);
+          blue[j] = (w0 * (p0 & 0xff) + w1 * (p1 & 0xff) + w2 * (p2 & 0xff))
+            >> (14 - EXTRA_BITS);
+        }
+      }
+
+      for (int row = startRow; row < endRow; row++)
+      {
+        int r0 = (yFirst[row] - firstRow) * width;
+        int r1 = (Math.min(yFirst[row] + 1, sourceHeight - 1) - firstRow) * width;
+        int r2 = (Math.min(yFirst[row] + 2, sourceHeight - 1) - firstRow) * width;
+        int w0 = yWeights[3 * row];
+        int w1 = yWeights[3 * row + 1];
+        int w2 = yWeights[3 * row + 2];
+        for (int col = 0; col < width; col++)
+        {
+          int r = (w0 * red[r0 + col] + w1 * red[r1 + col] + w2 * red[r2 + col] + half) >> shift;
+          int g = (w0 * green[r0 + col] + w1 * green[r1 + col] + w2 * green[r2 + col] + half) >> shift;
+          int b = (w0 * blue[r0 + col] + w1 * blue[r1 + col] + w2 * blue[r2 + col] + half) >> shift;
+          target[row * width + col] = 0xff000000 | (r << 16) | (g << 8) | b;
+        }
+      }
+    });
+  }
+
+  /**
+   * Method to work out, for each new position, the first source
+   * position it covers and how much of it and the next two it covers.
+   * The three weights of a position add up to 1 in 14-bit fixed point.
+   * @param sourceLength the source width or height
+   * @param length the new width or height, at least half the source
+   * @param first where to put the first source position of each new one
+   * @param weights where to put three weights for each new position
+   */
+  private static void weights(int sourceLength, int length, int[] first, int[] weights)
+  {
+    for (int pos = 0; pos < length; pos++)
+    {
+      // the covered span in source pixels is [start, end) in units of 1/length
+      long start = (long) pos * sourceLength;
+      long end = start + sourceLength;
+      int firstPixel = (int) (start / length);
+      first[pos] = firstPixel;
+      int total = 0;
+      for (int k = 0; k < 3; k++)
+      {
+        long pixelStart = Math.max(start, (long) (firstPixel + k) * length);
+        long pixelEnd = Math.min(end, (long) (firstPixel + k + 1) * length);
+        int weight = 0;
+        if (pixelEnd > pixelStart)
+          weight = (int) (((pixelEnd - pixelStart) * ONE + sourceLength / 2) / sourceLength);
+        weights[3 * pos + k] = weight;
+        total += weight;
+      }
+      // rounding can leave the sum a little off; put that on the first pixel
+      weights[3 * pos] += ONE - total;
+    }
+  }
+
+  /**
+   * Method to split a length into nearly equal parts
+   * @param length the length to split
+   * @param parts the number of parts
+   * @return the parts + 1 places where the parts start and end
+   */
+  private static int[] edges(int length, int parts)
+  {
+    int[] edges = new int[parts + 1];
+    for (int k = 0; k <= parts; k++)
+      edges[k] = (int) ((long) k * length / parts);
+    return edges;
+  }
+}
@@ -0,0 +1,295 @@
+import java.util.Arrays;
+
+/**
+ * Contains the Sobel and Canny edge detectors used by
+ * Picture.sobelEdgeDetection and Picture.cannyEdgeDetection.
+ *
+ * Everything works on a luminance plane: one int from 0 to 255 per
+ * pixel in row-major order.  Only integer arithmetic is used and each
+ * step runs on parallel bands of rows.  Pixels off the edge of the
+ * plane are replaced by the closest pixel on it, as in
+ * EdgeHelpers.getNeighbor.
+ */
+public class EdgeDetectors
+{
+  /** tan(22.5 degrees) and tan(67.5 degrees) scaled by 256 */
+  private static final int TAN_22_5 = 106;
+  private static final int TAN_67_5 = 618;
+
+  /**
+   * Method to get the luminance plane of a picture, using the Rec. 601
+   * weights 0.299, 0.587 and 0.114 scaled by 256
+   * @param picture the picture
+   * @return the luminance of every pixel in row-major order
+   */
+  public static int[] luminance(SimplePicture picture)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] plane = picture.getBasicPixels(0, 0, width, height);
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+        plane[i] = luminance(plane[i]);
+    });
+    return plane;
+  }
+
+  /**
+   * Method to get the luminance of one pixel value, with the same
+   * weights as the luminance plane
+   * @param rgb the pixel value (alpha, red, green, blue)
+   * @return the luminance from 0 to 255
+   */
+  public static int luminance(int rgb)
+  {
+    return (77 * ((rgb >> 16) & 0xff) + 150 * ((rgb >> 8) & 0xff)
+            + 29 * (rgb & 0xff) + 128) >> 8;
+  }
+
+  /**
+   * Method to compute the Sobel gradient of a luminance plane
+   * @param plane the luminance values in row-major order
+   * @param width the width of the plane
+   * @param height the height of the plane
+   * @return the gradient magnitude and direction of every pixel
+   */
+  public static GradientField sobel(int[] plane, int width, int height)
+  {
+    int[] magnitude = new int[width * height];
+    byte[] direction = new byte[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        int above = Math.max(row - 1, 0) * width;
+        int here = row * width;
+        int below = Math.min(row + 1, height - 1) * width;
+        for (int col = 0; col < width; col++)
+        {
+          int left = Math.max(col - 1, 0);
+          int right = Math.min(col + 1, width - 1);
+          int gx = (plane[above + right] + 2 * plane[here + right] + plane[below + right])
+            - (plane[above + left] + 2 * plane[here + left] + plane[below + left]);
+          int gy = (plane[below + left] + 2 * plane[below + col] + plane[below + right])
+            - (plane[above + left] + 2 * plane[above + col] + plane[above + right]);
+          magnitude[here + col] = roundedSquareRoot(gx * gx + gy * gy);
+          direction[here + col] = (byte) directionOf(gx, gy);
+        }
+      }
+    });
+    return new GradientField(width, height, magnitude, direction);
+  }
+
+  /**
+   * Method to get the square root of a number rounded to the nearest
+   * whole number, one bit of the root at a time, so no floating point
+   * is needed
+   * @param value the number, 0 or more
+   * @return the rounded square root
+   */
+  static int roundedSquareRoot(int value)
+  {
+    int remainder = value;
+    int root = 0;
+    int bit = 1 << 30;
+    while (bit > remainder)
+      bit >>= 2;
+    while (bit != 0)
+    {
+      if (remainder >= root + bit)
+      {
+        remainder -= root + bit;
+        root = (root >> 1) + bit;
+      }
+      else
+        root >>= 1;
+      bit >>= 2;
+    }
+    // the root is rounded down; value - root * root is now in remainder
+    return remainder > root ? root + 1 : root;
+  }
+
+  /**
+   * Method to find edges with the Canny algorithm: smooth the plane with
+   * a 5x5 Gaussian, find the Sobel gradient, thin the edges to one pixel
+   * by keeping only local maxima along the gradient, then keep weak edge
+   * pixels only where they connect to a strong one
+   * @param plane the luminance values in row-major order
+   * @param width the width of the plane
+   * @param height the height of the plane
+   * @param lowThreshold the smallest magnitude that can continue an edge
+   * @param highThreshold the smallest magnitude that can start an edge
+   * @return true for every edge pixel in row-major order
+   */
+  public static boolean[] canny(int[] plane, int width, int height,
+                                int lowThreshold, int highThreshold)
+  {
+    int[] smooth = gaussianBlur(plane, width, height);
+    GradientField gradient = sobel(smooth, width, height);
+    int[] thin = suppressNonMaxima(gradient);
+    return hysteresis(thin, width, height, lowThreshold, highThreshold);
+  }
+
+  /**
+   * Method to smooth a plane with the 5x5 kernel made from the binomial
+   * weights 1 4 6 4 1, run as a horizontal then a vertical pass
+   * @param plane the values in row-major order
+   * @param width the width of the plane
+   * @param height the height of the plane
+   * @return the smoothed values
+   */
+  public static int[] gaussianBlur(int[] plane, int width, int height)
+  {
+    int[] across = new int[width * height];
+    int[] result = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        int here = row * width;
+        for (int col = 0; col < width; col++)
+        {
+          across[here + col] = plane[here + Math.max(col - 2, 0)]
+            + 4 * plane[here + Math.max(col - 1, 0)]
+            + 6 * plane[here + col]
+            + 4 * plane[here + Math.min(col + 1, width - 1)]
+            + plane[here + Math.min(col + 2, width - 1)];
+        }
+      }
+    });
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        int up2 = Math.max(row - 2, 0) * width;
+        int up1 = Math.max(row - 1, 0) * width;
+        int here = row * width;
+        int down1 = Math.min(row + 1, height - 1) * width;
+        int down2 = Math.min(row + 2, height - 1) * width;
+        for (int col = 0; col < width; col++)
+        {
+          int sum = across[up2 + col] + 4 * across[up1 + col] + 6 * across[here + col]
+            + 4 * across[down1 + col] + across[down2 + col];
+          result[here + col] = (sum + 128) >> 8;
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Method to keep only the gradient magnitudes that are at least as
+   * large as both neighbours along the gradient direction
+   * @param gradient the gradient field
+   * @return the thinned magnitudes, zero where suppressed
+   */
+  private static int[] suppressNonMaxima(GradientField gradient)
+  {
+    int width = gradient.getWidth();
+    int height = gradient.getHeight();
+    int[] magnitude = gradient.getMagnitudes();
+    byte[] direction = gradient.getDirections();
+    int[] thin = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        for (int col = 0; col < width; col++)
+        {
+          int i = row * width + col;
+          int value = magnitude[i];
+          if (value == 0)
+            continue;
+          int stepX;
+          int stepY;
+          switch (direction[i])
+          {
+            case GradientField.DEGREES_0: stepX = 1; stepY = 0; break;
+            case GradientField.DEGREES_45: stepX = 1; stepY = 1; break;
+            case GradientField.DEGREES_90: stepX = 0; stepY = 1; break;
+            default: stepX = 1; stepY = -1; break;
+          }
+          // the strict comparison on one side keeps one pixel of a plateau
+          int ahead = magnitudeAt(magnitude, width, height, col + stepX, row + stepY);
+          int behind = magnitudeAt(magnitude, width, height, col - stepX, row - stepY);
+          if (value > ahead && value >= behind)
+            thin[i] = value;
+        }
+      }
+    });
+    return thin;
+  }
+
+  /**
+   * Method to trace edges: pixels at or over the high threshold start
+   * an edge, and it continues through connected pixels at or over the
+   * low threshold.  An explicit stack is used so long edges can't
+   * overflow the call stack.
+   * @param thin the thinned magnitudes
+   * @param width the width of the plane
+   * @param height the height of the plane
+   * @param lowThreshold the smallest magnitude that can continue an edge
+   * @param highThreshold the smallest magnitude that can start an edge
+   * @return true for every edge pixel in row-major order
+   */
+  private static boolean[] hysteresis(int[] thin, int width, int height,
+                                      int lowThreshold, int highThreshold)
+  {
+    boolean[] edges = new boolean[width * height];
+    int[] stack = new int[64];
+    for (int start = 0; start < thin.length; start++)
+    {
+      if (edges[start] || thin[start] < highThreshold || thin[start] == 0)
+        continue;
+      edges[start] = true;
+      int top = 0;
+      stack[top++] = start;
+      while (top > 0)
+      {
+        int i = stack[--top];
+        int row = i / width;
+        int col = i % width;
+        for (int y = Math.max(row - 1, 0); y <= Math.min(row + 1, height - 1); y++)
+        {
+          for (int x = Math.max(col - 1, 0); x <= Math.min(col + 1, width - 1); x++)
+          {
+            int j = y * width + x;
+            if (!edges[j] && thin[j] >= lowThreshold && thin[j] > 0)
+            {
+              edges[j] = true;
+              if (top == stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+              stack[top++] = j;
+            }
+          }
+        }
+      }
+    }
+    return edges;
+  }
+
+  /**
+   * Method to get a magnitude, or zero for a pixel off the plane
+   */
+  private static int magnitudeAt(int[] magnitude, int width, int height, int x, int y)
+  {
+    if (x < 0 || x >= width || y < 0 || y >= height)
+      return 0;
+    return magnitude[y * width + x];
+  }
+
+  /**
+   * Method to round a gradient direction to the nearest 45 degrees
+   * without any trigonometry.  Rows grow downwards, so a gradient
+   * with gx and gy of the same sign points down and to the right.
+   * @param gx the horizontal gradient
+   * @param gy the vertical gradient
+   * @return one of the GradientField direction codes
+   */
+  private static int directionOf(int gx, int gy)
+  {
+    int ax = Math.abs(gx);
+    int ay = Math.abs(gy);
+    if (ay * 256 <= ax * TAN_22_5)
+      return GradientField.DEGREES_0;
+    if (ay * 256 >= ax * TAN_67_5)
+      return GradientField.DEGREES_90;
+    return (gx > 0) == (gy > 0) ? GradientField.DEGREES_45 : GradientField.DEGREES_135;
+  }
+}
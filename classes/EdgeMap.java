@@ -0,0 +1,312 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Holds the color distances between every pixel of a picture and its
+ * neighbours, so that Picture.edgeDetection and Picture.edgeDetection2
+ * style edge pictures can be made for many thresholds without
+ * computing a single distance again and without changing the picture.
+ *
+ * Only the distances to the right, bottom, bottom-right and bottom-left
+ * neighbours are stored; the other four neighbours of a pixel share
+ * these with it.  Each distance d is kept in a char as 2 * floor(d),
+ * plus one if d is not a whole number.  That takes two bytes instead
+ * of eight and still compares exactly against any whole-number
+ * threshold t: d &gt; t exactly when the stored value is over 2 * t,
+ * and d &lt; t exactly when it is under 2 * t.
+ *
+ * Distances are normally Pixel.colorDistance, straight-line distance
+ * in RGB.  A perceptual map uses delta E in Lab instead (see
+ * ColorSpaces), so a threshold means about the same visible change for
+ * every color.
+ */
+public class EdgeMap
+{
+  /** the largest squared distance between two colors */
+  private static final int MAX_SQUARED_DISTANCE = 3 * 255 * 255;
+
+  /** the stored value for every possible squared distance */
+  private static final char[] QUANTIZED = buildQuantizedTable();
+
+  /** black and white, as used in the edge pictures */
+  private static final int BLACK = 0xff000000;
+  private static final int WHITE = 0xffffffff;
+
+  /** the picture the distances came from */
+  private final SimplePicture picture;
+
+  /** the version of the picture when the distances were computed */
+  private final long version;
+
+  /** the width and height of the picture */
+  private final int width;
+  private final int height;
+
+  /** distance to the pixel on the right (zero in the last column) */
+  private final char[] east;
+
+  /** distance to the pixel below (zero in the last row) */
+  private final char[] south;
+
+  /** distance to the pixel below and to the right */
+  private final char[] southEast;
+
+  /** distance to the pixel below and to the left */
+  private final char[] southWest;
+
+  /** the larger of east and south, made the first time it is needed */
+  private char[] eastOrSouth;
+
+  /**
+   * Constructor that computes the neighbour distances of a picture
+   * @param picture the picture to find edges in
+   */
+  public EdgeMap(SimplePicture picture)
+  {
+    this(picture, false);
+  }
+
+  /**
+   * Constructor that computes the neighbour distances of a picture,
+   * either in RGB or in Lab
+   * @param picture the picture to find edges in
+   * @param perceptual true to measure distances as Lab delta E, false
+   * to measure them like Pixel.colorDistance
+   */
+  public EdgeMap(SimplePicture picture, boolean perceptual)
+  {
+    this.picture = picture;
+    this.version = picture.getVersion();
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    int size = width * height;
+    east = new char[size];
+    south = new char[size];
+    southEast = new char[size];
+    southWest = new char[size];
+    float[] lab = perceptual ? ColorSpaces.toLab(pixels, width, height) : null;
+
+    for (int row = 0; row < height; row++)
+    {
+      int rowStart = row * width;
+      boolean lastRow = row == height - 1;
+      for (int col = 0; col < width; col++)
+      {
+        int i = rowStart + col;
+        if (col < width - 1)
+          east[i] = distance(pixels, lab, i, i + 1);
+        if (!lastRow)
+        {
+          south[i] = distance(pixels, lab, i, i + width);
+          if (col < width - 1)
+            southEast[i] = distance(pixels, lab, i, i + width + 1);
+          if (col > 0)
+            southWest[i] = distance(pixels, lab, i, i + width - 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Method to get the width of the picture the map was made from
+   * @return the width in pixels
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture the map was made from
+   * @return the height in pixels
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to check that the picture has not changed since the
+   * distances were computed
+   * @return true if the map still matches the picture
+   */
+  public boolean isUpToDate()
+  {
+    return picture.getVersion() == version;
+  }
+
+  /**
+   * Method to make the picture Picture.edgeDetection would produce
+   * for the given distance, without changing the original picture.
+   * The last column has no pixel to its right, so it is left white.
+   * @param edgeDist the distance for finding edges
+   * @return a new black and white picture of the edges
+   */
+  public Picture edgeDetection(int edgeDist)
+  {
+    char[] larger = getEastOrSouth();
+    int limit = 2 * edgeDist;
+    int[] result = new int[width * height];
+    for (int row = 0; row < height; row++)
+    {
+      int rowStart = row * width;
+      for (int col = 0; col < width - 1; col++)
+        result[rowStart + col] = larger[rowStart + col] > limit ? BLACK : WHITE;
+      result[rowStart + width - 1] = WHITE;
+    }
+    return toPicture(result);
+  }
+
+  /**
+   * Method to make the picture Picture.edgeDetection2 would produce
+   * for the given distance, without changing the original picture
+   * @param edgeDist the distance for finding edges
+   * @return a new black and white picture of the edges
+   */
+  public Picture edgeDetection2(int edgeDist)
+  {
+    int limit = 2 * edgeDist;
+    int[] result = new int[width * height];
+    for (int row = 0; row < height; row++)
+    {
+      int rowStart = row * width;
+      boolean inside = row > 0 && row < height - 1;
+      for (int col = 0; col < width; col++)
+      {
+        int i = rowStart + col;
+        boolean edge;
+        if (inside && col > 0 && col < width - 1)
+        {
+          // no neighbour is off the picture, so read the planes directly
+          int up = i - width;
+          edge = edgePair(southEast[up - 1], east[i], limit)
+            || edgePair(south[up], southWest[i], limit)
+            || edgePair(southWest[up + 1], south[i], limit)
+            || edgePair(east[i - 1], southEast[i], limit);
+        }
+        else
+        {
+          edge = edgePair(neighborDistance(row, col, -1, -1), neighborDistance(row, col, 0, 1), limit)
+            || edgePair(neighborDistance(row, col, -1, 0), neighborDistance(row, col, 1, -1), limit)
+            || edgePair(neighborDistance(row, col, -1, 1), neighborDistance(row, col, 1, 0), limit)
+            || edgePair(neighborDistance(row, col, 0, -1), neighborDistance(row, col, 1, 1), limit);
+        }
+        result[i] = edge ? BLACK : WHITE;
+      }
+    }
+    return toPicture(result);
+  }
+
+  /**
+   * Method to get the stored distance from a pixel to one of its
+   * neighbours, using the closest existing pixel for neighbours off
+   * the picture the same way EdgeHelpers.getNeighbor does
+   * @param row the row of the pixel
+   * @param col the column of the pixel
+   * @param rowStep the row offset of the neighbour (-1, 0 or 1)
+   * @param colStep the column offset of the neighbour (-1, 0 or 1)
+   * @return the stored distance
+   */
+  private int neighborDistance(int row, int col, int rowStep, int colStep)
+  {
+    if (row + rowStep < 0 || row + rowStep >= height)
+      rowStep = 0;
+    if (col + colStep < 0 || col + colStep >= width)
+      colStep = 0;
+
+    // every neighbour pair is stored once, at its top (or left) pixel
+    int i = row * width + col;
+    if (rowStep == 0)
+    {
+      if (colStep == 0) return 0;
+      return colStep > 0 ? east[i] : east[i - 1];
+    }
+    if (rowStep > 0)
+    {
+      if (colStep == 0) return south[i];
+      return colStep > 0 ? southEast[i] : southWest[i];
+    }
+    int up = i - width;
+    if (colStep == 0) return south[up];
+    return colStep > 0 ? southWest[up + 1] : southEast[up - 1];
+  }
+
+  /**
+   * Method to get the larger of the right and bottom distances of
+   * every pixel, which is all edgeDetection has to compare
+   * @return the larger distance for every pixel
+   */
+  private synchronized char[] getEastOrSouth()
+  {
+    if (eastOrSouth == null)
+    {
+      eastOrSouth = new char[east.length];
+      for (int i = 0; i < east.length; i++)
+        eastOrSouth[i] = east[i] > south[i] ? east[i] : south[i];
+    }
+    return eastOrSouth;
+  }
+
+  /**
+   * Method to make a picture out of edge pixel values
+   * @param pixels the black and white pixel values
+   * @return the new picture
+   */
+  private Picture toPicture(int[] pixels)
+  {
+    Picture result = new Picture(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    result.setBasicPixels(0, 0, width, height, pixels);
+    return result;
+  }
+
+  /**
+   * The stored-value version of EdgeHelpers.edgePair
+   * @return true if one of a and b is over limit and the other one is under
+   */
+  private static boolean edgePair(int a, int b, int limit)
+  {
+    return a > limit && b < limit || a < limit && b > limit;
+  }
+
+  /**
+   * Method to get the stored distance between two pixels
+   * @param pixels the pixel values
+   * @param lab the Lab colors of the pixels, or null to use RGB
+   * @param i the index of one pixel
+   * @param j the index of the other pixel
+   * @return the stored distance
+   */
+  private static char distance(int[] pixels, float[] lab, int i, int j)
+  {
+    if (lab == null)
+      return distance(pixels[i], pixels[j]);
+    double d = ColorSpaces.deltaE(lab, i, j);
+    int whole = (int) d;
+    return (char) (2 * whole + (whole == d ? 0 : 1));
+  }
+
+  /**
+   * Method to get the stored distance between two colors
+   * @param rgb1 one color as an int
+   * @param rgb2 the other color as an int
+   * @return the stored distance
+   */
+  private static char distance(int rgb1, int rgb2)
+  {
+    int red = ((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff);
+    int green = ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+    int blue = (rgb1 & 0xff) - (rgb2 & 0xff);
+    return QUANTIZED[red * red + green * green + blue * blue];
+  }
+
+  /**
+   * Method to build the table of stored values for squared distances
+   * @return the stored value for every squared distance
+   */
+  private static char[] buildQuantizedTable()
+  {
+    char[] table = new char[MAX_SQUARED_DISTANCE + 1];
+    int root = 0;
+    for (int squared = 0; squared <= MAX_SQUARED_DISTANCE; squared++)
+    {
+      while ((root + 1) * (root + 1) <= squared)
+        root++;
+      table[squared] = (char) (2 * root + (root * root == squared ? 0 : 1));
+    }
+    return table;
+  }
+}
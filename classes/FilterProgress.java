@@ -0,0 +1,150 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how far a filter has got and lets it be cancelled.
+ * A filter run with run(...) doesn't have to know about it: every
+ * ParallelRows pass the filter makes on that thread reports the rows
+ * it finishes here, and checks before each band of rows whether the
+ * filter has been cancelled, throwing a CancellationException if so.
+ *
+ * A filter that makes several passes over the picture doesn't say how
+ * many it will make, so the fraction done is the rows finished out of
+ * the rows of all the passes started so far.  It can go back a little
+ * when a new pass starts.
+ */
+public class FilterProgress
+{
+  /**
+   * Something that wants to hear how far a filter has got
+   */
+  public interface Listener
+  {
+    /**
+     * Method called when more of the filter is done.  It is called on
+     * whatever thread did the work.
+     * @param fraction how much is done, from 0 to 1
+     */
+    void progressChanged(double fraction);
+  }
+
+  /** the progress of the filter running on each thread, if any */
+  private static final ThreadLocal<FilterProgress> CURRENT = new ThreadLocal<FilterProgress>();
+
+  /** who to tell about progress, or null */
+  private final Listener listener;
+
+  /** the rows of all the passes started so far */
+  private final AtomicLong rowsStarted = new AtomicLong();
+
+  /** the rows finished */
+  private final AtomicLong rowsDone = new AtomicLong();
+
+  /** set when the filter should stop */
+  private volatile boolean cancelled;
+
+  /**
+   * Constructor that takes who to tell about progress
+   * @param listener the listener, or null for none
+   */
+  public FilterProgress(Listener listener)
+  {
+    this.listener = listener;
+  }
+
+  /**
+   * Method to get the progress of the filter running on this thread
+   * @return the progress, or null if the thread isn't running one
+   */
+  public static FilterProgress current()
+  {
+    return CURRENT.get();
+  }
+
+  /**
+   * Method to run work on this thread with this progress in charge of it
+   * @param work the work to run, such as applying a filter
+   * @throws CancellationException if the work was cancelled before it finished
+   */
+  public void run(Runnable work)
+  {
+    FilterProgress previous = CURRENT.get();
+    CURRENT.set(this);
+    try
+    {
+      checkCancelled();
+      work.run();
+    }
+    finally
+    {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Method to ask the filter to stop at the next band of rows
+   */
+  public void cancel()
+  {
+    cancelled = true;
+  }
+
+  /**
+   * Method to check if the filter has been asked to stop
+   * @return true if it has been cancelled
+   */
+  public boolean isCancelled()
+  {
+    return cancelled;
+  }
+
+  /**
+   * Method to stop the filter if it has been cancelled
+   * @throws CancellationException if it has been cancelled
+   */
+  public void checkCancelled()
+  {
+    if (cancelled)
+      throw new CancellationException("the filter was cancelled");
+  }
+
+  /**
+   * Method to get how much of the filter is done
+   * @return the fraction of the rows started that are finished, from 0 to 1
+   */
+  public double getFraction()
+  {
+    long started = rowsStarted.get();
+    return started == 0 ? 0 : Math.min(1.0, (double) rowsDone.get() / started);
+  }
+
+  /**
+   * Method to forget the rows counted so far, as when the same progress
+   * is used for a second run
+   */
+  public void reset()
+  {
+    rowsStarted.set(0);
+    rowsDone.set(0);
+  }
+
+  /**
+   * Method to record that a pass over some rows has started
+   * @param rows the number of rows in the pass
+   */
+  void passStarted(int rows)
+  {
+    rowsStarted.addAndGet(rows);
+  }
+
+  /**
+   * Method to record that some rows are finished
+   * @param rows the number of rows finished
+   */
+  void rowsFinished(int rows)
+  {
+    rowsDone.addAndGet(rows);
+    if (listener != null)
+      listener.progressChanged(getFraction());
+  }
+}
@@ -0,0 +1,151 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * A paint-bucket fill.  Starting from a seed pixel, it fills every
+ * connected pixel (left, right, up or down) whose color is within a
+ * tolerance of the seed's color, measured like Pixel.colorDistance.
+ * The distance is compared squared, so no square roots are taken.
+ *
+ * It is a scanline fill: each step fills a whole horizontal run and
+ * then looks along the rows above and below it for runs still to fill,
+ * which go on an explicit stack instead of the call stack.  Pixels are
+ * read a row at a time, only for the rows the fill reaches and the
+ * rows next to them, and only the rectangle around the filled pixels
+ * is written back, so the time taken grows with the filled area, not
+ * the picture size (apart from clearing the one-bit mask).
+ */
+public class FloodFill
+{
+  /**
+   * Method to fill the region around a pixel with a color
+   * @param picture the picture to fill in
+   * @param x the column of the seed pixel
+   * @param y the row of the seed pixel
+   * @param newColor the color to fill with
+   * @param tolerance how far from the seed color a pixel can be and
+   * still be filled; 0 fills only the exact same color
+   * @return a mask of the filled pixels
+   * @throws IllegalArgumentException if the seed is not on the picture
+   * or the tolerance is negative
+   */
+  public static BinaryImage fill(SimplePicture picture, int x, int y,
+                                 Color newColor, double tolerance)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    if (x < 0 || x >= width || y < 0 || y >= height)
+      throw new IllegalArgumentException("The seed " + x + "," + y + " is not on the "
+                                         + width + "x" + height + " picture");
+    if (!(tolerance >= 0))
+      throw new IllegalArgumentException("The tolerance must not be negative, not " + tolerance);
+    // the rows read so far, each the whole width of the picture
+    int[][] rows = new int[height][];
+    BinaryImage filled = new BinaryImage(width, height);
+    int seed = row(picture, rows, y)[x];
+    int seedRed = (seed >> 16) & 0xff;
+    int seedGreen = (seed >> 8) & 0xff;
+    int seedBlue = seed & 0xff;
+    long limit = (long) Math.floor(tolerance * tolerance);
+    int fillColor = newColor.getRGB() & 0x00ffffff;
+
+    int minX = x, maxX = x, minY = y, maxY = y;
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = x;
+    stack[top++] = y;
+    while (top > 0)
+    {
+      int row = stack[--top];
+      int col = stack[--top];
+      if (filled.get(col, row))
+        continue;
+
+      // widen to the whole run of matching pixels on this row
+      int[] pixels = row(picture, rows, row);
+      int left = col;
+      while (left > 0 && !filled.get(left - 1, row)
+             && matches(pixels[left - 1], seedRed, seedGreen, seedBlue, limit))
+        left--;
+      int right = col;
+      while (right < width - 1 && !filled.get(right + 1, row)
+             && matches(pixels[right + 1], seedRed, seedGreen, seedBlue, limit))
+        right++;
+
+      for (int i = left; i <= right; i++)
+      {
+        filled.set(i, row, true);
+        pixels[i] = (pixels[i] & 0xff000000) | fillColor;
+      }
+      minX = Math.min(minX, left);
+      maxX = Math.max(maxX, right);
+      minY = Math.min(minY, row);
+      maxY = Math.max(maxY, row);
+
+      // push the first pixel of each run to fill in the rows above and below
+      for (int next = row - 1; next <= row + 1; next += 2)
+      {
+        if (next < 0 || next >= height)
+          continue;
+        int[] nextPixels = row(picture, rows, next);
+        boolean inRun = false;
+        for (int i = left; i <= right; i++)
+        {
+          boolean candidate = !filled.get(i, next)
+            && matches(nextPixels[i], seedRed, seedGreen, seedBlue, limit);
+          if (candidate && !inRun)
+          {
+            if (top + 2 > stack.length)
+              stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[top++] = i;
+            stack[top++] = next;
+          }
+          inRun = candidate;
+        }
+      }
+    }
+
+    // write back only the rows and columns that were touched; the fill
+    // is connected, so every row from minY to maxY has been read
+    int fillWidth = maxX - minX + 1;
+    int fillHeight = maxY - minY + 1;
+    int[] changed = new int[fillWidth * fillHeight];
+    for (int row = 0; row < fillHeight; row++)
+      System.arraycopy(rows[minY + row], minX, changed, row * fillWidth, fillWidth);
+    picture.setBasicPixels(minX, minY, fillWidth, fillHeight, changed);
+    return filled;
+  }
+
+  /**
+   * Method to get the pixels of a row, reading it from the picture the
+   * first time it is needed
+   * @param picture the picture being filled
+   * @param rows the rows read so far, null for the others
+   * @param row the row wanted
+   * @return the pixel values of the row, which the fill changes in place
+   */
+  private static int[] row(SimplePicture picture, int[][] rows, int row)
+  {
+    if (rows[row] == null)
+      rows[row] = picture.getBasicPixels(0, row, picture.getWidth(), 1);
+    return rows[row];
+  }
+
+  /**
+   * Method to check if a pixel is close enough to the seed color
+   * @param rgb the pixel value
+   * @param red the seed red
+   * @param green the seed green
+   * @param blue the seed blue
+   * @param limit the largest allowed squared distance
+   * @return true if the pixel should be filled
+   */
+  private static boolean matches(int rgb, int red, int green, int blue, long limit)
+  {
+    int redDistance = ((rgb >> 16) & 0xff) - red;
+    int greenDistance = ((rgb >> 8) & 0xff) - green;
+    int blueDistance = (rgb & 0xff) - blue;
+    return redDistance * redDistance + greenDistance * greenDistance
+      + blueDistance * blueDistance <= limit;
+  }
+}
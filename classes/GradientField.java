@@ -0,0 +1,85 @@
+/**
+ * The brightness gradient of a picture as found by the Sobel operator:
+ * how strongly the brightness changes at every pixel and in which
+ * direction.  Directions are rounded to the nearest of 0, 45, 90 and
+ * 135 degrees, which is all that edge thinning needs.
+ */
+public class GradientField
+{
+  /** direction codes, for gradients pointing along these angles */
+  public static final int DEGREES_0 = 0;
+  public static final int DEGREES_45 = 1;
+  public static final int DEGREES_90 = 2;
+  public static final int DEGREES_135 = 3;
+
+  /** the width and height of the field */
+  private final int width;
+  private final int height;
+
+  /** the gradient magnitude of every pixel in row-major order */
+  private final int[] magnitude;
+
+  /** the direction code of every pixel in row-major order */
+  private final byte[] direction;
+
+  /**
+   * Constructor that takes the magnitudes and directions
+   * @param width the width of the field
+   * @param height the height of the field
+   * @param magnitude the gradient magnitudes in row-major order
+   * @param direction the direction codes in row-major order
+   */
+  public GradientField(int width, int height, int[] magnitude, byte[] direction)
+  {
+    this.width = width;
+    this.height = height;
+    this.magnitude = magnitude;
+    this.direction = direction;
+  }
+
+  /**
+   * Method to get the width of the field
+   * @return the width in pixels
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the field
+   * @return the height in pixels
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the gradient magnitude at a pixel
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @return the magnitude (0 to about 1443)
+   */
+  public int getMagnitude(int x, int y)
+  {
+    return magnitude[y * width + x];
+  }
+
+  /**
+   * Method to get the gradient direction at a pixel
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @return one of DEGREES_0, DEGREES_45, DEGREES_90 or DEGREES_135
+   */
+  public int getDirection(int x, int y)
+  {
+    return direction[y * width + x];
+  }
+
+  /**
+   * Method to get all the magnitudes.  The array is shared, not copied.
+   * @return the magnitudes in row-major order
+   */
+  public int[] getMagnitudes() { return magnitude; }
+
+  /**
+   * Method to get all the direction codes.  The array is shared, not copied.
+   * @return the direction codes in row-major order
+   */
+  public byte[] getDirections() { return direction; }
+}
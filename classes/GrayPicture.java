@@ -0,0 +1,98 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * A gray picture stored as one byte per pixel, a quarter of the memory
+ * of a Picture.  Shades go from 0 (black) to 255 (white).  It is meant
+ * for work that only needs brightness, like edge detection, and can be
+ * turned back into a Picture to show it.
+ */
+public class GrayPicture
+{
+  /** the width and height of the picture */
+  private final int width;
+  private final int height;
+
+  /** the shade of every pixel in row-major order */
+  private final byte[] shades;
+
+  /**
+   * Constructor that makes a black gray picture
+   * @param width the width of the picture
+   * @param height the height of the picture
+   */
+  public GrayPicture(int width, int height)
+  {
+    this.width = width;
+    this.height = height;
+    this.shades = new byte[width * height];
+  }
+
+  /**
+   * Constructor that turns a picture to gray
+   * @param picture the picture to convert
+   * @param mode how to turn colors into shades of gray
+   */
+  public GrayPicture(SimplePicture picture, GrayscaleMode mode)
+  {
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    this.shades = mode.toGray(picture.getBasicPixels(0, 0, width, height), width, height);
+  }
+
+  /**
+   * Method to get the width of the picture
+   * @return the width in pixels
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture
+   * @return the height in pixels
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the shade of a pixel
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @return the shade from 0 to 255
+   */
+  public int getShade(int x, int y)
+  {
+    return shades[y * width + x] & 0xff;
+  }
+
+  /**
+   * Method to set the shade of a pixel
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @param shade the shade from 0 to 255
+   */
+  public void setShade(int x, int y, int shade)
+  {
+    shades[y * width + x] = (byte) shade;
+  }
+
+  /**
+   * Method to get the shades of all the pixels.  The array is shared,
+   * not copied, and each byte is a shade from 0 to 255 (use & 0xff).
+   * @return the shades in row-major order
+   */
+  public byte[] getShades() { return shades; }
+
+  /**
+   * Method to make a color picture that looks the same
+   * @return the new picture
+   */
+  public Picture toPicture()
+  {
+    int[] pixels = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+        pixels[i] = 0xff000000 | (shades[i] & 0xff) * 0x010101;
+    });
+    Picture picture = new Picture(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    picture.setBasicPixels(0, 0, width, height, pixels);
+    return picture;
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ * Ways to turn a color into a shade of gray.
+ *
+ * The eye is much more sensitive to green than to blue, so a plain
+ * average of red, green and blue makes blue things look too light and
+ * green things too dark.  The luminance modes weight the channels the
+ * way the eye does.  Weights are whole numbers out of 65536, so no
+ * floating point is used per pixel.
+ *
+ * Color values in a picture are gamma encoded (sRGB), not proportional
+ * to the light, so adding weighted encoded values is only close to
+ * right.  LINEAR turns each value into the light it stands for with
+ * the lookup tables in ColorSpaces, adds those up, and turns the total
+ * back, which gets the brightness of saturated colors right.
+ */
+public enum GrayscaleMode
+{
+  /** (red + green + blue) / 3, what grayscale() has always done */
+  AVERAGE(0, 0, 0),
+
+  /** the luminance weights of standard definition video (Rec. 601) */
+  REC_601(19595, 38470, 7471),
+
+  /** the luminance weights of HD video and sRGB (Rec. 709) */
+  REC_709(13933, 46871, 4732),
+
+  /** the Rec. 709 weights applied to linear light, then gamma encoded again */
+  LINEAR(13933, 46871, 4732);
+
+  /** the weights of red, green and blue out of 65536 */
+  private final int redWeight;
+  private final int greenWeight;
+  private final int blueWeight;
+
+  /**
+   * Constructor that sets the channel weights
+   */
+  GrayscaleMode(int redWeight, int greenWeight, int blueWeight)
+  {
+    this.redWeight = redWeight;
+    this.greenWeight = greenWeight;
+    this.blueWeight = blueWeight;
+  }
+
+  /**
+   * Method to turn a picture to gray in place
+   * @param picture the picture to change
+   */
+  public void apply(SimplePicture picture)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    byte[] gray = toGray(pixels, width, height);
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+        pixels[i] = (pixels[i] & 0xff000000) | (gray[i] & 0xff) * 0x010101;
+    });
+    picture.setBasicPixels(0, 0, width, height, pixels);
+  }
+
+  /**
+   * Method to find the gray shade of every pixel
+   * @param pixels the pixel values (alpha, red, green, blue) in row-major order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @return the gray shades from 0 to 255, one byte per pixel
+   */
+  public byte[] toGray(int[] pixels, int width, int height)
+  {
+    byte[] gray = new byte[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      int start = startRow * width;
+      int end = endRow * width;
+      // one loop per mode, so the inner loops have no switch in them
+      switch (this)
+      {
+        case AVERAGE:
+          for (int i = start; i < end; i++)
+          {
+            int rgb = pixels[i];
+            gray[i] = (byte) ((((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3);
+          }
+          break;
+        case LINEAR:
+          for (int i = start; i < end; i++)
+          {
+            int rgb = pixels[i];
+            // the total can pass the largest int, so it is added up as a long
+            long light = (long) redWeight * ColorSpaces.LINEAR_16[(rgb >> 16) & 0xff]
+              + (long) greenWeight * ColorSpaces.LINEAR_16[(rgb >> 8) & 0xff]
+              + (long) blueWeight * ColorSpaces.LINEAR_16[rgb & 0xff];
+            gray[i] = ColorSpaces.ENCODE_16[(int) ((light + 32768) >> 16)];
+          }
+          break;
+        default:
+          for (int i = start; i < end; i++)
+          {
+            int rgb = pixels[i];
+            gray[i] = (byte) ((redWeight * ((rgb >> 16) & 0xff) + greenWeight * ((rgb >> 8) & 0xff)
+                               + blueWeight * (rgb & 0xff) + 32768) >> 16);
+          }
+          break;
+      }
+    });
+    return gray;
+  }
+}
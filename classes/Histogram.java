@@ -0,0 +1,437 @@
+import java.util.Arrays;
+
+/**
+ * How many pixels have each red, green and blue value from 0 to 255.
+ *
+ * A histogram can be made from a whole picture (in parallel bands of
+ * rows, added together at the end), from a rectangle of one, or from
+ * any pixel values.  Histograms of regions can be added together and
+ * subtracted from each other, so the histogram of a region that moves
+ * only needs the pixels that came in and went out.
+ *
+ * A histogram attached to a picture stays up to date by itself: it
+ * listens for pixels written with setBasicPixel(s), which includes
+ * Pixel and all the bulk methods, and takes out each old value and
+ * puts in the new one.  Reading it after a small edit costs as much as
+ * the edit, not the picture.  If the picture was changed some other
+ * way (by drawing on it, say) the version shows a missed change and
+ * the histogram is built again the next time it is read.
+ */
+public class Histogram
+{
+  /** channel numbers */
+  public static final int RED = 0;
+  public static final int GREEN = 1;
+  public static final int BLUE = 2;
+
+  /** the number of values a channel can have */
+  public static final int VALUES = 256;
+
+  /** the counts of each value of each channel */
+  private final int[][] counts = new int[3][VALUES];
+
+  /** the number of pixels counted */
+  private long total;
+
+  /** the picture this is attached to, or null */
+  private SimplePicture picture;
+
+  /** the version of the attached picture that the counts are for */
+  private long version;
+
+  /** the listener that keeps an attached histogram up to date */
+  private SimplePicture.WriteListener listener;
+
+  /**
+   * Constructor that makes an empty histogram
+   */
+  public Histogram()
+  {
+  }
+
+  /**
+   * Constructor that copies another histogram.  The copy is not
+   * attached to a picture.
+   * @param other the histogram to copy
+   */
+  public Histogram(Histogram other)
+  {
+    merge(other);
+  }
+
+  /**
+   * Constructor that counts some pixel values
+   * @param pixels the pixel values (alpha, red, green, blue)
+   */
+  public Histogram(int[] pixels)
+  {
+    add(pixels, 0, pixels.length);
+  }
+
+  /**
+   * Method to make the histogram of a whole picture
+   * @param picture the picture to count
+   * @return the histogram, not attached to the picture
+   */
+  public static Histogram of(SimplePicture picture)
+  {
+    return of(picture, 0, 0, picture.getWidth(), picture.getHeight());
+  }
+
+  /**
+   * Method to make the histogram of a rectangle of a picture
+   * @param picture the picture to count
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param width the width of the rectangle
+   * @param height the height of the rectangle
+   * @return the histogram, not attached to the picture
+   */
+  public static Histogram of(SimplePicture picture, int x, int y, int width, int height)
+  {
+    Histogram histogram = new Histogram();
+    histogram.count(picture, x, y, width, height);
+    return histogram;
+  }
+
+  /**
+   * Method to make the histogram of pixel values already read from a
+   * picture, counting bands of rows in parallel
+   * @param pixels the pixel values (alpha, red, green, blue) in row-major order
+   * @param width the width of the rectangle the values came from
+   * @param height the height of the rectangle the values came from
+   * @return the histogram
+   */
+  public static Histogram of(int[] pixels, int width, int height)
+  {
+    Histogram histogram = new Histogram();
+    histogram.count(pixels, width, height);
+    return histogram;
+  }
+
+  /**
+   * Method to make a histogram that is kept up to date as the picture
+   * changes.  Call detach when it is no longer needed.
+   * @param picture the picture to count
+   * @return the attached histogram
+   */
+  public static Histogram attach(SimplePicture picture)
+  {
+    Histogram histogram = new Histogram();
+    histogram.picture = picture;
+    histogram.listener = histogram::pixelsWritten;
+    picture.addWriteListener(histogram.listener);
+    histogram.rebuild();
+    return histogram;
+  }
+
+  /**
+   * Method to stop keeping the histogram up to date.  It keeps the
+   * counts it has.
+   */
+  public synchronized void detach()
+  {
+    if (picture == null)
+      return;
+    counts();
+    picture.removeWriteListener(listener);
+    picture = null;
+    listener = null;
+  }
+
+  /**
+   * Method to get the count of one value of a channel
+   * @param channel RED, GREEN or BLUE
+   * @param value the value from 0 to 255
+   * @return the number of pixels with that value
+   */
+  public int getCount(int channel, int value)
+  {
+    return counts()[channel][value];
+  }
+
+  /**
+   * Method to get the counts of every value of a channel
+   * @param channel RED, GREEN or BLUE
+   * @return a copy of the 256 counts
+   */
+  public int[] getCounts(int channel)
+  {
+    int[][] current = counts();
+    synchronized (this)
+    {
+      return current[channel].clone();
+    }
+  }
+
+  /**
+   * Method to get the number of pixels counted
+   * @return the number of pixels
+   */
+  public long getTotal()
+  {
+    counts();
+    return total;
+  }
+
+  /**
+   * Method to get the smallest value of a channel
+   * @param channel RED, GREEN or BLUE
+   * @return the smallest value with a count, or -1 if there are no pixels
+   */
+  public int getMin(int channel)
+  {
+    int[] bins = counts()[channel];
+    for (int value = 0; value < VALUES; value++)
+      if (bins[value] != 0)
+        return value;
+    return -1;
+  }
+
+  /**
+   * Method to get the largest value of a channel
+   * @param channel RED, GREEN or BLUE
+   * @return the largest value with a count, or -1 if there are no pixels
+   */
+  public int getMax(int channel)
+  {
+    int[] bins = counts()[channel];
+    for (int value = VALUES - 1; value >= 0; value--)
+      if (bins[value] != 0)
+        return value;
+    return -1;
+  }
+
+  /**
+   * Method to get the average value of a channel
+   * @param channel RED, GREEN or BLUE
+   * @return the average value, or 0 if there are no pixels
+   */
+  public double getMean(int channel)
+  {
+    int[] bins = counts()[channel];
+    long sum = 0;
+    for (int value = 0; value < VALUES; value++)
+      sum += (long) value * bins[value];
+    return total == 0 ? 0 : (double) sum / total;
+  }
+
+  /**
+   * Method to get the value of a channel that a fraction of the pixels
+   * are at or below, such as 0.5 for the median
+   * @param channel RED, GREEN or BLUE
+   * @param fraction the fraction from 0 to 1
+   * @return the smallest value with at least that fraction of pixels at
+   * or below it, or -1 if there are no pixels
+   */
+  public int getPercentile(int channel, double fraction)
+  {
+    int[] bins = counts()[channel];
+    if (total == 0)
+      return -1;
+    long wanted = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int value = 0; value < VALUES; value++)
+    {
+      seen += bins[value];
+      if (seen >= wanted)
+        return value;
+    }
+    return VALUES - 1;
+  }
+
+  /**
+   * Method to add another histogram's counts to this one, such as to
+   * join the histograms of two regions
+   * @param other the histogram to add
+   */
+  public void merge(Histogram other)
+  {
+    combine(other, 1);
+  }
+
+  /**
+   * Method to take another histogram's counts away from this one, such
+   * as to remove a region counted before
+   * @param other the histogram to take away
+   */
+  public void subtract(Histogram other)
+  {
+    combine(other, -1);
+  }
+
+  /**
+   * Method to count more pixel values
+   * @param pixels the pixel values (alpha, red, green, blue)
+   */
+  public synchronized void add(int[] pixels)
+  {
+    add(pixels, 0, pixels.length);
+  }
+
+  /**
+   * Method to stop counting pixel values that were counted before
+   * @param pixels the pixel values (alpha, red, green, blue)
+   */
+  public synchronized void remove(int[] pixels)
+  {
+    int[] red = counts[RED];
+    int[] green = counts[GREEN];
+    int[] blue = counts[BLUE];
+    for (int rgb : pixels)
+    {
+      red[(rgb >> 16) & 0xff]--;
+      green[(rgb >> 8) & 0xff]--;
+      blue[rgb & 0xff]--;
+    }
+    total -= pixels.length;
+  }
+
+  /**
+   * Method to check that an attached histogram has seen every change
+   * to its picture.  A histogram that isn't attached is always up to date.
+   * @return true if the counts match the picture without building again
+   */
+  public synchronized boolean isUpToDate()
+  {
+    return picture == null || picture.getVersion() == version;
+  }
+
+  /**
+   * Method to get the counts, first building them again if the
+   * attached picture changed in a way that wasn't reported
+   * @return the counts
+   */
+  private synchronized int[][] counts()
+  {
+    if (picture != null && picture.getVersion() != version)
+      rebuild();
+    return counts;
+  }
+
+  /**
+   * Method to count the attached picture from scratch
+   */
+  private synchronized void rebuild()
+  {
+    for (int[] bins : counts)
+      Arrays.fill(bins, 0);
+    total = 0;
+    // read the version first so a write during the count is caught next time
+    version = picture.getVersion();
+    count(picture, 0, 0, picture.getWidth(), picture.getHeight());
+    if (picture.getVersion() != version)
+      version = -1;
+  }
+
+  /**
+   * Method to add the counts of a rectangle of a picture, with bands
+   * of rows counted in parallel
+   */
+  private void count(SimplePicture source, int x, int y, int width, int height)
+  {
+    count(source.getBasicPixels(x, y, width, height), width, height);
+  }
+
+  /**
+   * Method to add the counts of a rectangle of pixel values, with bands
+   * of rows counted in parallel
+   */
+  private void count(int[] pixels, int width, int height)
+  {
+    Object lock = new Object();
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      Histogram band = new Histogram();
+      band.add(pixels, startRow * width, endRow * width);
+      // not merge, since the caller may be holding this histogram's lock
+      synchronized (lock)
+      {
+        addCounts(band.counts, band.total, 1);
+      }
+    });
+  }
+
+  /**
+   * Method to update an attached histogram after pixels are written.
+   * If an earlier change was missed it is left to be built again.
+   */
+  private synchronized void pixelsWritten(int x, int y, int width, int height,
+                                          int[] oldPixels, int[] newPixels, long newVersion)
+  {
+    if (picture == null || version != newVersion - 1)
+      return;
+    int count = width * height;
+    int[] red = counts[RED];
+    int[] green = counts[GREEN];
+    int[] blue = counts[BLUE];
+    for (int i = 0; i < count; i++)
+    {
+      int before = oldPixels[i];
+      int after = newPixels[i];
+      if (before == after)
+        continue;
+      red[(before >> 16) & 0xff]--;
+      green[(before >> 8) & 0xff]--;
+      blue[before & 0xff]--;
+      red[(after >> 16) & 0xff]++;
+      green[(after >> 8) & 0xff]++;
+      blue[after & 0xff]++;
+    }
+    version = newVersion;
+  }
+
+  /**
+   * Method to count part of an array of pixel values.  It doesn't
+   * lock the histogram, so only use it on one no other thread can see.
+   * @param pixels the pixel values (alpha, red, green, blue)
+   * @param start the index of the first value to count
+   * @param end one past the index of the last value to count
+   */
+  void add(int[] pixels, int start, int end)
+  {
+    int[] red = counts[RED];
+    int[] green = counts[GREEN];
+    int[] blue = counts[BLUE];
+    for (int i = start; i < end; i++)
+    {
+      int rgb = pixels[i];
+      red[(rgb >> 16) & 0xff]++;
+      green[(rgb >> 8) & 0xff]++;
+      blue[rgb & 0xff]++;
+    }
+    total += end - start;
+  }
+
+  /**
+   * Method to add or take away another histogram's counts
+   */
+  private void combine(Histogram other, int sign)
+  {
+    // copy the other counts first so two histograms are never locked at once
+    int[][] from = new int[3][];
+    long otherTotal;
+    synchronized (other)
+    {
+      int[][] current = other.counts();
+      for (int channel = 0; channel < 3; channel++)
+        from[channel] = current[channel].clone();
+      otherTotal = other.total;
+    }
+    synchronized (this)
+    {
+      counts();
+      addCounts(from, otherTotal, sign);
+    }
+  }
+
+  /**
+   * Method to add or take away counts without locking
+   */
+  private void addCounts(int[][] from, long fromTotal, int sign)
+  {
+    for (int channel = 0; channel < 3; channel++)
+      for (int value = 0; value < VALUES; value++)
+        counts[channel][value] += sign * from[channel][value];
+    total += sign * fromTotal;
+  }
+}
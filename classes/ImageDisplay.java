@@ -5,6 +5,15 @@ import java.awt.image.*;
 /**
  * Class to display an image and the current location with a + sign
  * 
+ * The image can be shown larger than it is by a zoom factor.  Only the
+ * part of the display that needs painting (usually the part that is
+ * visible in the scroll pane) is drawn, each display pixel taking the
+ * color of the image pixel under it, so zooming in needs memory for the
+ * window, not for the whole enlarged image.
+ * 
+ * A selected rectangle can be outlined as well, such as while the user
+ * drags one out to see its statistics.
+ * 
  * @author Barb Ericson ericson@cc.gatech.edu
  */
 public class ImageDisplay extends JPanel implements Scrollable
@@ -19,6 +28,14 @@ public class ImageDisplay extends JPanel implements Scrollable
   private int currentX = 0;    
   /** the current y index */
   private int currentY = 0;    
+  /** how far the arms of the + sign reach from the current location */
+  private static final int CROSS_SIZE = 3;
+  /** how many display pixels each image pixel takes across and down */
+  private double zoom = 1;
+  /** the buffer the zoomed part is drawn into, kept between paints */
+  private BufferedImage zoomBuffer;
+  /** the selected rectangle in display coordinates, or null */
+  private Rectangle selection;
   
   //////////////////////////// constructors /////////////////////////////////
   
@@ -73,8 +90,7 @@ public class ImageDisplay extends JPanel implements Scrollable
    */
   public void setCurrentX(int x) 
   {
-    currentX = x;
-    repaint();
+    setCurrentLocation(x,currentY);
   }
   
   /**
@@ -83,18 +99,118 @@ public class ImageDisplay extends JPanel implements Scrollable
    */
   public void setCurrentY(int y) 
   {
+    setCurrentLocation(currentX,y);
+  }
+  
+  /**
+   * Method to move the current location.  Only the + sign at the old
+   * location and the one at the new location are redrawn, not the
+   * whole image.
+   * @param x the x value to use
+   * @param y the y value to use
+   */
+  public void setCurrentLocation(int x, int y)
+  {
+    if (x == currentX && y == currentY)
+      return;
+    Rectangle old = crossBounds(currentX,currentY);
+    currentX = x;
     currentY = y;
-    repaint();
+    repaintNow(old);
+    repaintNow(crossBounds(x,y));
+  }
+  
+  /**
+   * Method to get the rectangle the + sign covers at a location
+   * @param x the x of the location
+   * @param y the y of the location
+   * @return the rectangle covering the + sign and its outline
+   */
+  private Rectangle crossBounds(int x, int y)
+  {
+    return new Rectangle(x - CROSS_SIZE,y - CROSS_SIZE,2 * CROSS_SIZE + 1,2 * CROSS_SIZE + 1);
+  }
+  
+  /**
+   * Method to redraw a rectangle of the display.  On the event thread
+   * it is painted at once, because Swing would otherwise join two
+   * rectangles far apart into one big one that covers everything
+   * between them.
+   * @param rect the rectangle to redraw
+   */
+  private void repaintNow(Rectangle rect)
+  {
+    if (SwingUtilities.isEventDispatchThread() && isShowing())
+      paintImmediately(rect);
+    else
+      repaint(rect);
+  }
+  
+  /**
+   * Method to get the selected rectangle
+   * @return a copy of the rectangle outlined, or null if there is none
+   */
+  public Rectangle getSelection()
+  {
+    return selection == null ? null : new Rectangle(selection);
+  }
+  
+  /**
+   * Method to outline a selected rectangle.  Only the old and new
+   * outlines are redrawn, so dragging a big selection stays quick.
+   * @param rect the rectangle in display coordinates, or null for none
+   */
+  public void setSelection(Rectangle rect)
+  {
+    if (rect == null ? selection == null : rect.equals(selection))
+      return;
+    Rectangle old = selection;
+    selection = rect == null ? null : new Rectangle(rect);
+    repaintOutline(old);
+    repaintOutline(selection);
+  }
+  
+  /**
+   * Method to redraw the one pixel wide edges of a rectangle
+   * @param rect the rectangle, or null for none
+   */
+  private void repaintOutline(Rectangle rect)
+  {
+    if (rect == null)
+      return;
+    repaintNow(new Rectangle(rect.x,rect.y,rect.width,1));
+    repaintNow(new Rectangle(rect.x,rect.y + rect.height - 1,rect.width,1));
+    repaintNow(new Rectangle(rect.x,rect.y,1,rect.height));
+    repaintNow(new Rectangle(rect.x + rect.width - 1,rect.y,1,rect.height));
   }
   
+  /**
+   * Method to get the zoom factor
+   * @return how many display pixels each image pixel takes
+   */
+  public double getZoom() { return zoom; }
+  
   /**
    * Method to set the image
    * @param theImage the new image to use
    */
   public void setImage(Image theImage)
+  {
+    setImage(theImage,1);
+  }
+  
+  /**
+   * Method to set the image and how much to enlarge it
+   * @param theImage the new image to use
+   * @param theZoom how many display pixels each image pixel takes
+   * across and down, 1 or more
+   */
+  public void setImage(Image theImage, double theZoom)
   {
     image = theImage;
-    setPreferredSize(new Dimension(image.getWidth(this),image.getHeight(this)));
+    zoom = theZoom;
+    setPreferredSize(new Dimension((int) (image.getWidth(this) * zoom),
+                                   (int) (image.getHeight(this) * zoom)));
     repaint();
   }
   
@@ -154,18 +270,30 @@ public class ImageDisplay extends JPanel implements Scrollable
   public void paintComponent(Graphics g)
   {
     super.paintComponent(g);
-    int num = 3;
+    int num = CROSS_SIZE;
     int xStart = currentX - num;
     int xEnd = currentX + num;
     int yStart = currentY - num;
     int yEnd = currentY + num;
-    int width = image.getWidth(this);
+    int width = (int) (image.getWidth(this) * zoom);
     int maxX = width - 1;
-    int height = image.getHeight(this);
+    int height = (int) (image.getHeight(this) * zoom);
     int maxY = height - 1;
     
     // draw the image
-    g.drawImage(image,0,0,this);
+    if (zoom == 1)
+      g.drawImage(image,0,0,this);
+    else if (image instanceof BufferedImage)
+      drawZoomed(g,(BufferedImage) image,width,height);
+    else
+      g.drawImage(image,0,0,width,height,this);
+    
+    // outline the selection in yellow, on its edge pixels
+    if (selection != null)
+    {
+      g.setColor(Color.yellow);
+      g.drawRect(selection.x,selection.y,selection.width - 1,selection.height - 1);
+    }
     
     // check if the current index is in the image
     if (currentX >= 0 && currentX < width &&
@@ -213,4 +341,58 @@ public class ImageDisplay extends JPanel implements Scrollable
     }
   }
   
+  /**
+   * Method to draw the part of the zoomed image that needs painting.
+   * Each display pixel is given the color of the image pixel it falls
+   * in, which is what pictureX = displayX / zoom finds when the mouse
+   * is clicked there.
+   * @param g the graphics object for drawing with
+   * @param source the image at its own size
+   * @param width the width of the zoomed image
+   * @param height the height of the zoomed image
+   */
+  private void drawZoomed(Graphics g, BufferedImage source, int width, int height)
+  {
+    Rectangle clip = g.getClipBounds();
+    if (clip == null)
+      clip = new Rectangle(0,0,width,height);
+    clip = clip.intersection(new Rectangle(0,0,width,height));
+    if (clip.isEmpty())
+      return;
+    
+    // the image pixel under each display column and row of the clip
+    int[] columns = new int[clip.width];
+    for (int i = 0; i < clip.width; i++)
+      columns[i] = Math.min(source.getWidth() - 1, (int) ((clip.x + i) / zoom));
+    int[] rows = new int[clip.height];
+    for (int i = 0; i < clip.height; i++)
+      rows[i] = Math.min(source.getHeight() - 1, (int) ((clip.y + i) / zoom));
+    
+    // read just the image pixels under the clip
+    int left = columns[0];
+    int top = rows[0];
+    int sourceWidth = columns[clip.width - 1] - left + 1;
+    int sourceHeight = rows[clip.height - 1] - top + 1;
+    int[] pixels = source.getRGB(left,top,sourceWidth,sourceHeight,null,0,sourceWidth);
+    
+    // the buffer only grows, so it ends up the size of the largest clip
+    if (zoomBuffer == null)
+      zoomBuffer = new BufferedImage(clip.width,clip.height,BufferedImage.TYPE_INT_ARGB);
+    else if (zoomBuffer.getWidth() < clip.width || zoomBuffer.getHeight() < clip.height)
+      zoomBuffer = new BufferedImage(Math.max(clip.width,zoomBuffer.getWidth()),
+                                     Math.max(clip.height,zoomBuffer.getHeight()),
+                                     BufferedImage.TYPE_INT_ARGB);
+    int bufferWidth = zoomBuffer.getWidth();
+    int[] target = ((DataBufferInt) zoomBuffer.getRaster().getDataBuffer()).getData();
+    for (int y = 0; y < clip.height; y++)
+    {
+      int sourceRow = (rows[y] - top) * sourceWidth - left;
+      int targetRow = y * bufferWidth;
+      for (int x = 0; x < clip.width; x++)
+        target[targetRow + x] = pixels[sourceRow + columns[x]];
+    }
+    g.drawImage(zoomBuffer,clip.x,clip.y,clip.x + clip.width,clip.y + clip.height,
+                0,0,clip.width,clip.height,this);
+  }
+  
 }
@@ -89,7 +89,7 @@ public class IntVector {
    * Modulus function that always returns a positive value
    * e. g. modulus(-1, 100) == 99 and not -1
    */
-  private int modulus (int x, int n) {
+  public static int modulus (int x, int n) {
     return (((x % n) + n) % n);
   }
 
@@ -0,0 +1,240 @@
+/**
+ * A summed-area table of a picture.  Entry (x, y) of a channel holds the
+ * total of that channel over every pixel above and to the left of
+ * (x, y), so the total over any rectangle takes four lookups no matter
+ * how big the rectangle is.  The table is built in one row-major pass
+ * over the picture.
+ *
+ * Totals of squared values are kept as well, so the variance of a
+ * rectangle is just as cheap.  Both tables use long entries and take
+ * 48 bytes per pixel together; pass false for withSquares if only
+ * sums and means are needed to halve that.
+ */
+public class IntegralImage
+{
+  /** channel numbers */
+  public static final int RED = 0;
+  public static final int GREEN = 1;
+  public static final int BLUE = 2;
+
+  /** the picture the table was made from */
+  private final SimplePicture picture;
+
+  /** the version of the picture when the table was made */
+  private final long version;
+
+  /** the width and height of the picture */
+  private final int width;
+  private final int height;
+
+  /** the width of a table row, one more than the picture width */
+  private final int stride;
+
+  /** the sums for each channel, (width + 1) by (height + 1) */
+  private final long[][] sums = new long[3][];
+
+  /** the sums of squares for each channel, or null if not kept */
+  private final long[][] squares;
+
+  /**
+   * Constructor that builds the sums and sums of squares of a picture
+   * @param picture the picture to sum
+   */
+  public IntegralImage(SimplePicture picture)
+  {
+    this(picture, true);
+  }
+
+  /**
+   * Constructor that builds the sums of a picture, and the sums of
+   * squares if they are wanted
+   * @param picture the picture to sum
+   * @param withSquares true to keep sums of squares for the variance
+   */
+  public IntegralImage(SimplePicture picture, boolean withSquares)
+  {
+    this.picture = picture;
+    this.version = picture.getVersion();
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    this.stride = width + 1;
+    int size = stride * (height + 1);
+    for (int channel = 0; channel < 3; channel++)
+      sums[channel] = new long[size];
+    squares = withSquares ? new long[3][size] : null;
+
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    for (int row = 0; row < height; row++)
+    {
+      // running totals along this row, added to the entries of the row above
+      long red = 0, green = 0, blue = 0;
+      long redSquared = 0, greenSquared = 0, blueSquared = 0;
+      int above = row * stride + 1;
+      int here = above + stride;
+      for (int col = 0; col < width; col++)
+      {
+        int rgb = pixels[row * width + col];
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        red += r;
+        green += g;
+        blue += b;
+        sums[RED][here + col] = sums[RED][above + col] + red;
+        sums[GREEN][here + col] = sums[GREEN][above + col] + green;
+        sums[BLUE][here + col] = sums[BLUE][above + col] + blue;
+        if (squares != null)
+        {
+          redSquared += r * r;
+          greenSquared += g * g;
+          blueSquared += b * b;
+          squares[RED][here + col] = squares[RED][above + col] + redSquared;
+          squares[GREEN][here + col] = squares[GREEN][above + col] + greenSquared;
+          squares[BLUE][here + col] = squares[BLUE][above + col] + blueSquared;
+        }
+      }
+    }
+  }
+
+  /**
+   * Method to get the width of the picture the table was made from
+   * @return the width in pixels
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture the table was made from
+   * @return the height in pixels
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to check that the picture has not changed since the table
+   * was made
+   * @return true if the table still matches the picture
+   */
+  public boolean isUpToDate()
+  {
+    return picture.getVersion() == version;
+  }
+
+  /**
+   * Method to get the total of a channel over a rectangle
+   * @param channel RED, GREEN or BLUE
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the sum of the channel over the rectangle
+   */
+  public long getSum(int channel, int x, int y, int rectWidth, int rectHeight)
+  {
+    return rectangleTotal(sums[channel], x, y, rectWidth, rectHeight);
+  }
+
+  /**
+   * Method to get the average of a channel over a rectangle
+   * @param channel RED, GREEN or BLUE
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the mean value of the channel over the rectangle
+   */
+  public double getMean(int channel, int x, int y, int rectWidth, int rectHeight)
+  {
+    return (double) getSum(channel, x, y, rectWidth, rectHeight)
+      / ((long) rectWidth * rectHeight);
+  }
+
+  /**
+   * Method to get the variance of a channel over a rectangle
+   * @param channel RED, GREEN or BLUE
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the variance of the channel over the rectangle
+   */
+  public double getVariance(int channel, int x, int y, int rectWidth, int rectHeight)
+  {
+    if (squares == null)
+      throw new IllegalStateException("This integral image was made without sums of squares");
+    double count = (double) rectWidth * rectHeight;
+    double mean = getSum(channel, x, y, rectWidth, rectHeight) / count;
+    double meanOfSquares = rectangleTotal(squares[channel], x, y, rectWidth, rectHeight) / count;
+    return Math.max(0, meanOfSquares - mean * mean);
+  }
+
+  /**
+   * Method to get the standard deviation of a channel over a rectangle
+   * @param channel RED, GREEN or BLUE
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the standard deviation of the channel over the rectangle
+   */
+  public double getStandardDeviation(int channel, int x, int y, int rectWidth, int rectHeight)
+  {
+    return Math.sqrt(getVariance(channel, x, y, rectWidth, rectHeight));
+  }
+
+  /**
+   * Method to blur with a square box of any size in constant time per
+   * pixel.  Near the edges only the part of the box that is on the
+   * picture is averaged.  Alpha is taken from the original pixels.
+   * @param radius how many pixels on each side of the center to average
+   * @param original the original pixel values, for their alpha
+   * @return the blurred pixel values in row-major order, or a copy of
+   * the original values if the radius is 0
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  public int[] boxBlur(int radius, int[] original)
+  {
+    if (radius < 0)
+      throw new IllegalArgumentException("The radius must not be negative, not " + radius);
+    if (radius == 0)
+      return original.clone();
+    int[] result = new int[width * height];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        int top = Math.max(row - radius, 0);
+        int bottom = Math.min(row + radius + 1, height);
+        for (int col = 0; col < width; col++)
+        {
+          int left = Math.max(col - radius, 0);
+          int right = Math.min(col + radius + 1, width);
+          int boxWidth = right - left;
+          int boxHeight = bottom - top;
+          long count = (long) boxWidth * boxHeight;
+          long half = count / 2;
+          int red = (int) ((getSum(RED, left, top, boxWidth, boxHeight) + half) / count);
+          int green = (int) ((getSum(GREEN, left, top, boxWidth, boxHeight) + half) / count);
+          int blue = (int) ((getSum(BLUE, left, top, boxWidth, boxHeight) + half) / count);
+          int i = row * width + col;
+          result[i] = (original[i] & 0xff000000) | (red << 16) | (green << 8) | blue;
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Method to get the total of a table over a rectangle from its corners
+   * @param table the summed-area table
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the total over the rectangle
+   */
+  private long rectangleTotal(long[] table, int x, int y, int rectWidth, int rectHeight)
+  {
+    int topLeft = y * stride + x;
+    int bottomLeft = (y + rectHeight) * stride + x;
+    return table[bottomLeft + rectWidth] - table[bottomLeft]
+      - table[topLeft + rectWidth] + table[topLeft];
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * How to find the color at a point that falls between pixel centers,
+ * as a transform like a rotation needs for almost every pixel.  Each
+ * way mixes a square of source pixels around the point, and the wider
+ * ones keep more detail at the cost of more work per pixel.
+ *
+ * The weights are worked out once for each of SUBPIXELS + 1 evenly
+ * spaced positions from one pixel to the next, and kept as whole
+ * numbers out of ONE, so warping needs no floating point inside the
+ * per-pixel sums.
+ */
+public enum Interpolation
+{
+  /** the closest pixel (1 x 1), fastest but blocky */
+  NEAREST(1),
+
+  /** a straight-line mix of the closest 2 x 2 pixels */
+  BILINEAR(1),
+
+  /** a cubic curve through the closest 4 x 4 pixels (Keys, a = -0.5) */
+  BICUBIC(2),
+
+  /** a windowed sinc over the closest 6 x 6 pixels (Lanczos, a = 3), sharpest */
+  LANCZOS(3);
+
+  /** how many steps from one pixel to the next have their own weights */
+  public static final int SUBPIXELS = 64;
+
+  /** the fixed-point value of a weight of 1 (12 bits) */
+  public static final int ONE = 1 << 12;
+
+  /** how far the weights reach on each side of the point, in pixels */
+  private final int radius;
+
+  /**
+   * the weights for each subpixel position, made the first time they are
+   * needed; volatile because warps run on more than one thread, and two
+   * threads making it at once just make the same table
+   */
+  private volatile int[] table;
+
+  /**
+   * Constructor that sets how far the weights reach
+   */
+  Interpolation(int radius)
+  {
+    this.radius = radius;
+  }
+
+  /**
+   * Method to get the number of pixels mixed in each direction
+   * @return 1 for NEAREST, 2, 4 or 6 for the others
+   */
+  public int getTaps()
+  {
+    return this == NEAREST ? 1 : 2 * radius;
+  }
+
+  /**
+   * Method to get the first pixel mixed in for a point between pixels
+   * @param position where the point is, in pixels
+   * @return the row or column of the first pixel to mix in
+   */
+  public int firstPixel(double position)
+  {
+    if (this == NEAREST)
+      return (int) Math.floor(position + 0.5);
+    return (int) Math.floor(position) - radius + 1;
+  }
+
+  /**
+   * Method to get the subpixel position of a point, which picks its
+   * weights from the table
+   * @param position where the point is, in pixels
+   * @return a number from 0 (on a pixel) to SUBPIXELS (on the next one)
+   */
+  public static int subpixel(double position)
+  {
+    return (int) ((position - Math.floor(position)) * SUBPIXELS + 0.5);
+  }
+
+  /**
+   * Method to get the weights of every subpixel position.  The taps
+   * weights of position p start at p * getTaps() and add up to ONE.
+   * @return the table of weights, shared, not copied
+   */
+  public int[] weights()
+  {
+    int[] weights = table;
+    if (weights == null)
+    {
+      weights = makeTable();
+      table = weights;
+    }
+    return weights;
+  }
+
+  /**
+   * Method to work out the table of weights
+   */
+  private int[] makeTable()
+  {
+    int taps = getTaps();
+    int[] weights = new int[(SUBPIXELS + 1) * taps];
+    double[] exact = new double[taps];
+    for (int sub = 0; sub <= SUBPIXELS; sub++)
+    {
+      // the point is at radius - 1 + fraction from the first pixel
+      double fraction = (double) sub / SUBPIXELS;
+      double sum = 0;
+      for (int k = 0; k < taps; k++)
+      {
+        exact[k] = this == NEAREST ? 1 : kernel(k - (radius - 1) - fraction);
+        sum += exact[k];
+      }
+      int total = 0;
+      int largest = 0;
+      for (int k = 0; k < taps; k++)
+      {
+        int weight = (int) Math.round(exact[k] / sum * ONE);
+        weights[sub * taps + k] = weight;
+        total += weight;
+        if (weight > weights[sub * taps + largest])
+          largest = k;
+      }
+      // rounding can leave the sum a little off; put that on the biggest weight
+      weights[sub * taps + largest] += ONE - total;
+    }
+    return weights;
+  }
+
+  /**
+   * Method to get the weight of a pixel a distance from the point
+   */
+  private double kernel(double distance)
+  {
+    double x = Math.abs(distance);
+    switch (this)
+    {
+      case BILINEAR:
+        return x < 1 ? 1 - x : 0;
+      case BICUBIC:
+        if (x < 1)
+          return (1.5 * x - 2.5) * x * x + 1;
+        if (x < 2)
+          return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+        return 0;
+      default:
+        if (x < 1e-9)
+          return 1;
+        if (x >= radius)
+          return 0;
+        double pix = Math.PI * x;
+        return radius * Math.sin(pix) * Math.sin(pix / radius) / (pix * pix);
+    }
+  }
+}
@@ -0,0 +1,254 @@
+import java.util.Arrays;
+
+/**
+ * Replaces every color value with the median of the square around it,
+ * which removes speckle noise while keeping edges sharp.  The work per
+ * pixel does not depend on the radius (the Perreault and Hebert
+ * algorithm).
+ *
+ * Each column keeps a histogram of the values in its part of the
+ * window.  Moving down a row adds one value to and removes one from
+ * each column histogram.  Moving right along a row adds one column
+ * histogram to the window histogram and removes another.  Histograms
+ * come in two levels, 16 coarse bins of 16 fine bins each: the coarse
+ * bins find which 16 values hold the median, and only those fine bins
+ * are brought up to date.
+ *
+ * Each channel is filtered separately.  Bands of rows run in parallel,
+ * each with its own column histograms.  Pixels off the picture are
+ * replaced by the closest pixel on it.
+ */
+public class MedianFilter
+{
+  /** the number of fine bins in a coarse bin, and of coarse bins */
+  private static final int BINS = 16;
+
+  /** bands are made taller than usual since each one has to fill its histograms */
+  private static final int MIN_ROWS_PER_BAND = 64;
+
+  /**
+   * Method to median filter a picture in place
+   * @param picture the picture to filter
+   * @param radius how many pixels on each side of the center to use;
+   * 0 leaves the picture as it is
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  public static void apply(SimplePicture picture, int radius)
+  {
+    checkRadius(radius);
+    if (radius == 0)
+      return;
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    picture.setBasicPixels(0, 0, width, height, apply(pixels, width, height, radius));
+  }
+
+  /**
+   * Method to median filter an array of pixel values
+   * @param pixels the pixel values (alpha, red, green, blue) in row-major order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param radius how many pixels on each side of the center to use
+   * @return a new array with the filtered pixel values; alpha is kept
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  public static int[] apply(int[] pixels, int width, int height, int radius)
+  {
+    checkRadius(radius);
+    if (radius == 0)
+      return pixels.clone();
+    int[] result = new int[pixels.length];
+    int[] columns = BorderMode.CLAMP.indexTable(width, radius, radius);
+    int[] rows = BorderMode.CLAMP.indexTable(height, radius, radius);
+    ParallelRows.forEachBand(height, MIN_ROWS_PER_BAND, (startRow, endRow) -> {
+      Band band = new Band(width, radius, columns, rows);
+      for (int i = startRow * width; i < endRow * width; i++)
+        result[i] = pixels[i] & 0xff000000;
+      for (int shift = 0; shift <= 16; shift += 8)
+        band.filter(pixels, result, shift, startRow, endRow);
+    });
+    return result;
+  }
+
+  /**
+   * Method to check that a radius is not negative
+   * @throws IllegalArgumentException if it is
+   */
+  private static void checkRadius(int radius)
+  {
+    if (radius < 0)
+      throw new IllegalArgumentException("The radius must not be negative, not " + radius);
+  }
+
+  /**
+   * The histograms used by one band of rows
+   */
+  private static class Band
+  {
+    private final int width;
+    private final int diameter;
+    private final int half;
+    private final int[] columns;
+    private final int[] rows;
+
+    /** fine and coarse histograms of every column */
+    private final int[] columnFine;
+    private final int[] columnCoarse;
+
+    /** fine and coarse histograms of the window */
+    private final int[] windowFine = new int[BINS * BINS];
+    private final int[] windowCoarse = new int[BINS];
+
+    /** the window position each coarse bin's fine bins are up to date for */
+    private final int[] fineColumn = new int[BINS];
+
+    /**
+     * Constructor that sets up empty histograms
+     * @param width the width of the image
+     * @param radius the radius of the window
+     * @param columns the column index table for the window
+     * @param rows the row index table for the window
+     */
+    Band(int width, int radius, int[] columns, int[] rows)
+    {
+      this.width = width;
+      this.diameter = 2 * radius + 1;
+      this.half = diameter * diameter / 2;
+      this.columns = columns;
+      this.rows = rows;
+      this.columnFine = new int[width * BINS * BINS];
+      this.columnCoarse = new int[width * BINS];
+    }
+
+    /**
+     * Method to filter one channel of the rows in this band
+     * @param pixels the pixel values
+     * @param result where to add the filtered channel
+     * @param shift the bit position of the channel in a pixel value
+     * @param startRow the first row of the band
+     * @param endRow one past the last row of the band
+     */
+    void filter(int[] pixels, int[] result, int shift, int startRow, int endRow)
+    {
+      // fill the column histograms for the window around the first row
+      Arrays.fill(columnFine, 0);
+      Arrays.fill(columnCoarse, 0);
+      for (int k = 0; k < diameter; k++)
+      {
+        int source = rows[startRow + k] * width;
+        for (int col = 0; col < width; col++)
+          addToColumn(col, (pixels[source + col] >> shift) & 0xff, 1);
+      }
+
+      for (int row = startRow; row < endRow; row++)
+      {
+        if (row > startRow)
+        {
+          // slide every column histogram down one row
+          int leaving = rows[row - 1] * width;
+          int entering = rows[row + diameter - 1] * width;
+          for (int col = 0; col < width; col++)
+          {
+            addToColumn(col, (pixels[leaving + col] >> shift) & 0xff, -1);
+            addToColumn(col, (pixels[entering + col] >> shift) & 0xff, 1);
+          }
+        }
+        filterRow(result, shift, row * width);
+      }
+    }
+
+    /**
+     * Method to slide the window along one row and write the medians
+     * @param result where to add the filtered channel
+     * @param shift the bit position of the channel in a pixel value
+     * @param rowStart the index of the first pixel of the row
+     */
+    private void filterRow(int[] result, int shift, int rowStart)
+    {
+      Arrays.fill(windowCoarse, 0);
+      for (int k = 0; k < diameter; k++)
+        addCoarse(columns[k], 1);
+      Arrays.fill(fineColumn, Integer.MIN_VALUE);
+
+      for (int col = 0; col < width; col++)
+      {
+        if (col > 0)
+        {
+          addCoarse(columns[col + diameter - 1], 1);
+          addCoarse(columns[col - 1], -1);
+        }
+
+        // find the coarse bin that holds the median
+        int count = 0;
+        int bin = 0;
+        while (count + windowCoarse[bin] <= half)
+          count += windowCoarse[bin++];
+
+        // then the value inside it
+        updateFine(bin, col);
+        int value = bin * BINS;
+        while (count + windowFine[value] <= half)
+          count += windowFine[value++];
+        result[rowStart + col] |= value << shift;
+      }
+    }
+
+    /**
+     * Method to bring the fine bins of one coarse bin up to date for a
+     * window position, either by stepping from where they were last
+     * used or, if that is further than rebuilding, by rebuilding them
+     * @param bin the coarse bin
+     * @param col the window position
+     */
+    private void updateFine(int bin, int col)
+    {
+      int last = fineColumn[bin];
+      int offset = bin * BINS;
+      if (last == Integer.MIN_VALUE || 2 * (col - last) > diameter)
+      {
+        Arrays.fill(windowFine, offset, offset + BINS, 0);
+        for (int k = 0; k < diameter; k++)
+          addFine(columns[col + k], offset, 1);
+      }
+      else
+      {
+        for (int step = last + 1; step <= col; step++)
+        {
+          addFine(columns[step + diameter - 1], offset, 1);
+          addFine(columns[step - 1], offset, -1);
+        }
+      }
+      fineColumn[bin] = col;
+    }
+
+    /**
+     * Method to add or remove one value in a column histogram
+     */
+    private void addToColumn(int col, int value, int amount)
+    {
+      columnFine[col * BINS * BINS + value] += amount;
+      columnCoarse[col * BINS + (value >> 4)] += amount;
+    }
+
+    /**
+     * Method to add or remove a column's coarse bins in the window
+     */
+    private void addCoarse(int col, int amount)
+    {
+      int start = col * BINS;
+      for (int bin = 0; bin < BINS; bin++)
+        windowCoarse[bin] += amount * columnCoarse[start + bin];
+    }
+
+    /**
+     * Method to add or remove a column's fine bins for one coarse bin
+     */
+    private void addFine(int col, int offset, int amount)
+    {
+      int start = col * BINS * BINS + offset;
+      for (int i = 0; i < BINS; i++)
+        windowFine[offset + i] += amount * columnFine[start + i];
+    }
+  }
+}
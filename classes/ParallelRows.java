@@ -0,0 +1,114 @@
+import java.util.stream.IntStream;
+
+/**
+ * Runs work on the rows of an image in parallel.  The rows are split
+ * into bands of neighbouring rows and each band is given to one thread
+ * of the common fork/join pool, so every thread walks its own part of
+ * the pixel array in row-major order.
+ *
+ * When the calling thread is running a filter for a FilterProgress,
+ * each finished band is reported to it, and each band first checks
+ * whether the filter has been cancelled.  The rows are then split
+ * into at least MONITORED_BANDS bands, so a cancel is noticed soon
+ * and progress moves in small steps.
+ */
+public class ParallelRows
+{
+  /** fewest rows worth giving to a thread of their own */
+  private static final int MIN_ROWS_PER_BAND = 16;
+
+  /** how many bands to make per processor, so uneven bands balance out */
+  private static final int BANDS_PER_PROCESSOR = 4;
+
+  /** fewest bands to make when a FilterProgress is watching */
+  private static final int MONITORED_BANDS = 32;
+
+  /**
+   * Work to do on a band of rows
+   */
+  public interface BandTask
+  {
+    /**
+     * Method to process the rows from startRow up to (not including) endRow
+     * @param startRow the first row of the band
+     * @param endRow one past the last row of the band
+     */
+    void run(int startRow, int endRow);
+  }
+
+  /**
+   * Method to run a task over all rows in parallel bands
+   * @param rows the number of rows
+   * @param task the work to do on each band
+   */
+  public static void forEachBand(int rows, BandTask task)
+  {
+    forEachBand(rows, MIN_ROWS_PER_BAND, task);
+  }
+
+  /**
+   * Method to run a task over all rows in parallel bands of at least
+   * the given size.  Tasks that have a setup cost for every band should
+   * ask for larger bands.
+   * @param rows the number of rows
+   * @param minRowsPerBand the fewest rows to put in a band
+   * @param task the work to do on each band
+   * @throws java.util.concurrent.CancellationException if the filter
+   * this thread is running is cancelled
+   */
+  public static void forEachBand(int rows, int minRowsPerBand, BandTask task)
+  {
+    int most = Runtime.getRuntime().availableProcessors() * BANDS_PER_PROCESSOR;
+    FilterProgress progress = FilterProgress.current();
+    if (progress != null)
+    {
+      progress.checkCancelled();
+      progress.passStarted(rows);
+      most = Math.max(most, MONITORED_BANDS);
+    }
+    int bands = Math.min(rows / Math.max(minRowsPerBand, 1), most);
+    if (bands <= 1)
+    {
+      if (rows > 0)
+        runBand(task, 0, rows, progress);
+      return;
+    }
+
+    final int bandCount = bands;
+    IntStream.range(0, bandCount).parallel().forEach(band ->
+      runBand(task, bandStart(band, bandCount, rows), bandStart(band + 1, bandCount, rows), progress));
+  }
+
+  /**
+   * Method to run one band, checking for a cancel first and reporting
+   * the rows afterwards if a progress is watching
+   * @param task the work to do
+   * @param startRow the first row of the band
+   * @param endRow one past the last row of the band
+   * @param progress the progress watching, or null
+   */
+  private static void runBand(BandTask task, int startRow, int endRow, FilterProgress progress)
+  {
+    if (progress == null)
+    {
+      task.run(startRow, endRow);
+      return;
+    }
+    progress.checkCancelled();
+    task.run(startRow, endRow);
+    progress.rowsFinished(endRow - startRow);
+  }
+
+  /**
+   * Method to get the first row of a band so that the rows are shared
+   * out as evenly as possible
+   * @param band the band number
+   * @param bands the number of bands
+   * @param rows the number of rows
+   * @return the first row of the band
+   */
+  private static int bandStart(int band, int bands, int rows)
+  {
+    return (int) ((long) band * rows / bands);
+  }
+}
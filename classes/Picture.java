@@ -2,6 +2,7 @@ import java.awt.*;
 import java.awt.font.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.io.*;
 import java.text.*;
 import java.util.*;
 import java.util.List; // resolves problem with java.awt.List and java.util.List
@@ -15,6 +16,14 @@ import java.util.List; // resolves problem with java.awt.List and java.util.List
  */
 public class Picture extends SimplePicture
 {
+  ///////////////////// fields ////////////////////////////////////////
+  
+  /** the row and column statistics, made the first time they are needed */
+  private PictureStatistics statistics;
+  
+  /** the histogram kept up to date with the picture, made when first needed */
+  private Histogram histogram;
+  
   ///////////////////// constructors //////////////////////////////////
   
   /**
@@ -132,22 +141,22 @@ public class Picture extends SimplePicture
   }
 
   /**
-   * Converts the whole image to grayscale
+   * Converts the whole image to grayscale by averaging the red, green
+   * and blue of each pixel
    */
   public void grayscale()
   {
-    Pixel[][] pixels = this.getPixels2D();
-    for (Pixel[] rowArray : pixels)
-    {
-      for (Pixel pix : rowArray)
-      {
-        int averageShade = (pix.getRed() + pix.getBlue() + pix.getGreen()) / 3;
-        pix.setRed(averageShade);
-        pix.setGreen(averageShade);
-        pix.setBlue(averageShade);
+    grayscale(GrayscaleMode.AVERAGE);
+  }
 
-      }
-    }
+  /**
+   * Converts the whole image to grayscale.  The luminance modes look
+   * more natural than the plain average.
+   * @param mode how to turn colors into shades of gray
+   */
+  public void grayscale(GrayscaleMode mode)
+  {
+    mode.apply(this);
   }
 
   /**
@@ -200,6 +209,56 @@ public class Picture extends SimplePicture
     }
   }
   
+  /**
+   * Removes noise first with a median filter and then does the
+   * same auto-level as fixUnderwater().  Without the filter, stretching
+   * the levels also stretches the noise.
+   * @param denoiseRadius the radius of the median filter, 0 for none
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  public void fixUnderwater(int denoiseRadius)
+  {
+    medianFilter(denoiseRadius);
+    fixUnderwater();
+  }
+
+  /**
+   * Replaces each color value with the median of the square around it.
+   * This removes speckle noise but keeps edges sharp, and a large
+   * radius takes no longer than a small one.
+   * @param radius how many pixels on each side of the center to use;
+   * 0 leaves the picture as it is
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  public void medianFilter(int radius)
+  {
+    MedianFilter.apply(this, radius);
+  }
+
+  /**
+   * Brings out detail in dark and bright parts of the picture by
+   * equalizing the brightness of each part separately (CLAHE).
+   * Works much better than fixUnderwater when the lighting is uneven.
+   * The colors are kept.
+   * @param tiles how many parts to split the picture into across and down
+   * @param clipLimit how strong the effect can be, such as 2 or 3
+   */
+  public void equalizeAdaptive(int tiles, double clipLimit)
+  {
+    Clahe.apply(this, tiles, tiles, clipLimit);
+  }
+
+  /**
+   * Removes a color cast, like the blue-green of underwater pictures.
+   * Unlike fixUnderwater this looks at all the pixels, not just the
+   * darkest and brightest one.
+   * @param mode how to decide what the cast is
+   */
+  public void balanceColors(WhiteBalance mode)
+  {
+    mode.apply(this);
+  }
+  
   /** Method that mirrors the picture around a 
     * vertical mirror in the center of the picture
     * from left to right */
@@ -589,6 +648,285 @@ public class Picture extends SimplePicture
       }
     }
   }
+
+  /**
+   * Finds edges with the Sobel operator: a pixel is an edge if the
+   * brightness gradient there is larger than edgeDist.  Much less
+   * noisy than comparing colors with single neighbours.
+   * @param edgeDist the gradient magnitude for finding edges (0 to about 1443)
+   */
+  public void sobelEdgeDetection(int edgeDist)
+  {
+    int width = getWidth();
+    int height = getHeight();
+    int[] magnitude = EdgeDetectors.sobel(EdgeDetectors.luminance(this),
+                                          width, height).getMagnitudes();
+    boolean[] edges = new boolean[magnitude.length];
+    for (int i = 0; i < magnitude.length; i++)
+      edges[i] = magnitude[i] > edgeDist;
+    showEdges(edges);
+  }
+
+  /**
+   * Finds thin, connected edges with the Canny algorithm.  Gradients
+   * of at least highThreshold start an edge and edges continue through
+   * gradients of at least lowThreshold.
+   * @param lowThreshold the gradient magnitude that can continue an edge
+   * @param highThreshold the gradient magnitude that can start an edge
+   */
+  public void cannyEdgeDetection(int lowThreshold, int highThreshold)
+  {
+    showEdges(EdgeDetectors.canny(EdgeDetectors.luminance(this),
+                                  getWidth(), getHeight(),
+                                  lowThreshold, highThreshold));
+  }
+
+  /**
+   * Filters the picture with a convolution kernel
+   * @param kernel the weights to use
+   * @param borderMode how to find neighbours off the picture
+   */
+  public void convolve(ConvolutionKernel kernel, BorderMode borderMode)
+  {
+    Convolution.apply(this, kernel, borderMode);
+  }
+
+  /**
+   * Blurs the picture by averaging each pixel with its neighbours.
+   * It uses an integral image, so a large radius is as fast as a small one.
+   * Near the edges only the neighbours on the picture are averaged.
+   * @param radius how many pixels on each side to average over; 0
+   * leaves the picture as it is
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  public void blur(int radius)
+  {
+    if (radius < 0)
+      throw new IllegalArgumentException("The radius must not be negative, not " + radius);
+    if (radius == 0)
+      return;
+    int[] pixels = getBasicPixels(0, 0, getWidth(), getHeight());
+    IntegralImage sums = new IntegralImage(this, false);
+    setBasicPixels(0, 0, getWidth(), getHeight(), sums.boxBlur(radius, pixels));
+  }
+
+  /**
+   * Blurs the picture with a Gaussian, which looks smoother than blur
+   * @param sigma the standard deviation of the blur in pixels
+   * @throws IllegalArgumentException if sigma is not more than 0
+   */
+  public void gaussianBlur(double sigma)
+  {
+    convolve(ConvolutionKernel.gaussian(sigma), BorderMode.MIRROR);
+  }
+
+  /**
+   * Sharpens the picture by increasing the difference between each
+   * pixel and its direct neighbours
+   */
+  public void sharpen()
+  {
+    convolve(ConvolutionKernel.sharpen(), BorderMode.CLAMP);
+  }
+
+  /**
+   * Fills the area around a pixel with a color, like the paint bucket
+   * in a paint program.  Pixels are filled if they connect to the
+   * starting pixel and their colorDistance from its color is at most
+   * the tolerance.
+   * @param x the column to start filling at
+   * @param y the row to start filling at
+   * @param newColor the color to fill with
+   * @param tolerance how different a color can be and still be filled
+   * @return a mask of the filled pixels
+   * @throws IllegalArgumentException if the starting pixel is not on
+   * the picture or the tolerance is negative
+   */
+  public BinaryImage floodFill(int x, int y, Color newColor, double tolerance)
+  {
+    return FloodFill.fill(this, x, y, newColor, tolerance);
+  }
+
+  /**
+   * Gets the row and column statistics of this picture.  They are
+   * worked out again when the picture changes.
+   * @return the statistics
+   */
+  public PictureStatistics getStatistics()
+  {
+    if (statistics == null)
+      statistics = new PictureStatistics(this);
+    return statistics;
+  }
+
+  /**
+   * Gets the histogram of this picture.  It is kept up to date as
+   * pixels are changed, so getting it again after a small change is fast.
+   * @return the histogram
+   */
+  public Histogram getHistogram()
+  {
+    if (histogram == null)
+      histogram = Histogram.attach(this);
+    return histogram;
+  }
+
+  /**
+   * Counts the pixels with a red value over a given value
+   * @param value the value to compare to
+   * @return the number of pixels with more red than value
+   */
+  public int getCountRedOverValue(int value)
+  {
+    return (int) getStatistics().getCountOver(PictureStatistics.RED, value);
+  }
+
+  /**
+   * Sets the blue to 0 in every pixel with a blue value over a given value
+   * @param value the value to compare to
+   */
+  public void clearBlueOverValue(int value)
+  {
+    int[] pixels = getBasicPixels(0, 0, getWidth(), getHeight());
+    for (int i = 0; i < pixels.length; i++)
+    {
+      if ((pixels[i] & 0xff) > value)
+        pixels[i] &= ~0xff;
+    }
+    setBasicPixels(0, 0, getWidth(), getHeight(), pixels);
+  }
+
+  /**
+   * Halves the red value of every pixel in the top half of the picture
+   */
+  public void setRedToHalfValueInTopHalf()
+  {
+    int rows = getHeight() / 2;
+    int[] pixels = getBasicPixels(0, 0, getWidth(), rows);
+    for (int i = 0; i < pixels.length; i++)
+    {
+      int red = (pixels[i] >> 16) & 0xff;
+      pixels[i] = (pixels[i] & ~0xff0000) | (red / 2) << 16;
+    }
+    setBasicPixels(0, 0, getWidth(), rows, pixels);
+  }
+
+  /**
+   * Finds the average color value (of red, green and blue) down a column
+   * @param col the column to average
+   * @return the average of the column's red, green and blue values
+   */
+  public double getAverageForColumn(int col)
+  {
+    PictureStatistics stats = getStatistics();
+    long total = stats.getColumnSum(PictureStatistics.RED, col)
+      + stats.getColumnSum(PictureStatistics.GREEN, col)
+      + stats.getColumnSum(PictureStatistics.BLUE, col);
+    return (double) total / (3 * getHeight());
+  }
+
+  /**
+   * Replaces the pixels that are close to a key color (like a blue or
+   * green screen) with the pixels of a background picture
+   * @param background the picture to put behind
+   * @param key the color of the screen
+   * @param tolerance how far from the key a color can be and be replaced
+   */
+  public void chromakey(Picture background, Color key, double tolerance)
+  {
+    ChromaKey.apply(this, background, key, tolerance, 0, false);
+  }
+
+  /**
+   * Replaces the pixels that are close to a key color with the pixels
+   * of a background picture, blending the two near the edge of the key
+   * @param background the picture to put behind
+   * @param key the color of the screen
+   * @param tolerance how far from the key a color can be and be replaced
+   * @param softness how much further away a color can be and be blended
+   * @param chromaOnly true to ignore brightness when comparing colors
+   */
+  public void chromakey(Picture background, Color key, double tolerance,
+                        double softness, boolean chromaOnly)
+  {
+    ChromaKey.apply(this, background, key, tolerance, softness, chromaOnly);
+  }
+
+  /**
+   * Replaces the pixels that look close to a key color with the pixels
+   * of a background picture.  Closeness is measured the way the eye
+   * sees it (Lab delta E), so a tolerance of about 20 works for most
+   * screens.
+   * @param background the picture to put behind
+   * @param key the color of the screen
+   * @param tolerance how different a color can look and be replaced
+   * @param softness how much more different a color can be and be blended
+   */
+  public void chromakeyPerceptual(Picture background, Color key,
+                                  double tolerance, double softness)
+  {
+    ChromaKey.applyPerceptual(this, background, key, tolerance, softness);
+  }
+
+  /**
+   * Hides a black and white message picture in this picture by
+   * making the red value odd where the message is dark and even
+   * everywhere else
+   * @param messagePict the message to hide
+   */
+  public void encode(Picture messagePict)
+  {
+    Steganography.encode(this, BinaryImage.fromPicture(messagePict));
+  }
+
+  /**
+   * Gets back a message picture hidden by encode
+   * @return the message, black where the red value is odd
+   */
+  public Picture decode()
+  {
+    return Steganography.decode(this).toPicture();
+  }
+
+  /**
+   * Hides data in the low bits of the colors.  The data doesn't have
+   * to fit in memory, but it does have to fit in the picture.
+   * @param data the data to hide
+   * @param channels the channels to use, such as
+   * Steganography.RED + Steganography.BLUE
+   * @param bits how many low bits of each channel to use, from 1 to 8
+   * @return the number of bytes hidden
+   * @throws IOException if the data can't be read
+   */
+  public long encode(InputStream data, int channels, int bits) throws IOException
+  {
+    return Steganography.encode(this, data, channels, bits);
+  }
+
+  /**
+   * Gets back data hidden by encode
+   * @param data where to write the data
+   * @param channels the channels that were used
+   * @param bits how many low bits of each channel were used
+   * @return the number of bytes written
+   * @throws IOException if the data can't be written or wasn't hidden
+   */
+  public long decode(OutputStream data, int channels, int bits) throws IOException
+  {
+    return Steganography.decode(this, data, channels, bits);
+  }
+
+  /**
+   * Replaces the image with black edge pixels on a white background
+   * @param edges true for every edge pixel in row-major order
+   */
+  private void showEdges(boolean[] edges)
+  {
+    int[] pixels = new int[edges.length];
+    for (int i = 0; i < edges.length; i++)
+      pixels[i] = edges[i] ? Color.BLACK.getRGB() : Color.WHITE.getRGB();
+    setBasicPixels(0, 0, getWidth(), getHeight(), pixels);
+  }
   
   
   /* Main method for testing - each class in Java can have a main 
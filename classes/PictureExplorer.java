@@ -4,12 +4,18 @@ import java.awt.event.*;
 import javax.swing.*;
 import java.awt.image.*;
 import javax.swing.border.*;
+import java.io.*;
 /**
  * Displays a picture and lets you explore the picture by displaying the row, column, red,
  * green, and blue values of the pixel at the cursor when you click a mouse button or
  * press and hold a mouse button while moving the cursor.  It also lets you zoom in or
  * out.  You can also type in a row and column value to see the color at that location.
  * 
+ * Dragging with the mouse button held down selects a rectangle, and the mean, standard
+ * deviation, smallest and largest values and histogram of the rectangle are shown as it
+ * is dragged.  They are found from tables kept for each version of the picture, so
+ * they take the same short time however big the rectangle is.
+ * 
  * Originally created for the Jython Environment for Students (JES). 
  * Modified to work with DrJava by Barbara Ericson
  * Also modified to show row and columns by Barbara Ericson
@@ -79,6 +85,34 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   private JMenuItem twoHundred;
   /** 500% zoom level */
   private JMenuItem fiveHundred;
+  /** filter menu */
+  private JMenu filterMenu;
+  /** item to cancel the running filter */
+  private JMenuItem cancelFilter;
+  
+  // background filters
+  /** the largest width or height of a filter preview */
+  private static final int PREVIEW_SIZE = 512;
+  /** the filter running in the background, or null */
+  private BackgroundFilter runningFilter;
+  /** shows how far the running filter has got */
+  private JProgressBar progressBar;
+  
+  // progressive loading
+  /** the largest width or height of the small version shown while a file loads */
+  private static final int LOAD_PREVIEW_SIZE = 1024;
+  
+  // selection
+  /** the pixel where the selection was started, or null */
+  private Point selectionStart;
+  /** the selected rectangle of the picture, or null */
+  private Rectangle selection;
+  /** panel with the statistics of the selection, shown from the first one on */
+  private JPanel selectionPanel;
+  /** label with the numbers for the selection */
+  private JLabel selectionLabel;
+  /** shows the histogram of the selection */
+  private HistogramView histogramView;
   
   /** The picture being explored */
   private DigitalPicture picture;
@@ -139,6 +173,15 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     PictureExplorerFocusTraversalPolicy newPolicy = new PictureExplorerFocusTraversalPolicy();
     pictureFrame.setFocusTraversalPolicy(newPolicy);
     
+    // stop a filter still running, which would hold up the filters of other windows
+    pictureFrame.addWindowListener(new WindowAdapter() {
+      public void windowClosed(WindowEvent e)
+      {
+        if (runningFilter != null)
+          runningFilter.cancel();
+      }
+    });
+    
   }
   
   /**
@@ -177,6 +220,26 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     zoomMenu.add(fiveHundred);
     menuBar.add(zoomMenu);
     
+    // filters work on the pixels of a SimplePicture, so only offer them for one
+    if (picture instanceof SimplePicture)
+    {
+      filterMenu = new JMenu("Filter");
+      String[] filterNames = {"Grayscale", "Blur", "Sharpen", "Median", "Equalize",
+                              "Balance Colors", "Edges"};
+      for (String name : filterNames)
+      {
+        JMenuItem item = new JMenuItem(name);
+        item.addActionListener(this);
+        filterMenu.add(item);
+      }
+      filterMenu.addSeparator();
+      cancelFilter = new JMenuItem("Cancel Filter");
+      cancelFilter.setEnabled(false);
+      cancelFilter.addActionListener(this);
+      filterMenu.add(cancelFilter);
+      menuBar.add(filterMenu);
+    }
+    
     // set the menu bar to this menu
     pictureFrame.setJMenuBar(menuBar);
   }
@@ -214,6 +277,15 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     //creates the scrollpane for the picture
     createAndInitScrollingImage();
     
+    // the progress bar for filters, shown while one runs
+    progressBar = new JProgressBar(0,100);
+    progressBar.setVisible(false);
+    pictureFrame.getContentPane().add(BorderLayout.SOUTH,progressBar);
+    
+    // the statistics of the selection, shown from the first one on
+    if (picture instanceof SimplePicture)
+      createSelectionPanel();
+    
     // show the picture in the frame at the size it needs to be
     pictureFrame.pack();
     pictureFrame.setVisible(true);
@@ -423,6 +495,23 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     pictureFrame.getContentPane().add(BorderLayout.NORTH,infoPanel);
   } 
   
+  /**
+   * Creates the East JPanel that shows the statistics of the selection
+   */
+  private void createSelectionPanel()
+  {
+    selectionLabel = new JLabel();
+    histogramView = new HistogramView();
+    JPanel contents = new JPanel(new BorderLayout());
+    contents.add(BorderLayout.NORTH,selectionLabel);
+    contents.add(BorderLayout.SOUTH,histogramView);
+    selectionPanel = new JPanel(new BorderLayout());
+    selectionPanel.setBorder(new TitledBorder("Selection"));
+    selectionPanel.add(BorderLayout.NORTH,contents);
+    selectionPanel.setVisible(false);
+    pictureFrame.getContentPane().add(BorderLayout.EAST,selectionPanel);
+  }
+  
   /**
    * Method to check that the current position is in the viewing area and if
    * not scroll to center the current position if possible
@@ -471,8 +560,9 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   }
   
   /**
-   * Zooms in the on picture by scaling the image.  
-   * It is extremely memory intensive.
+   * Zooms in the on picture by scaling the image.  Zooming out shows a
+   * smaller copy from the picture's pyramid; zooming in shows the
+   * picture itself and the display enlarges just the part in view.
    * @param factor the amount to zoom by
    */
   public void zoom(double factor)
@@ -485,14 +575,217 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     int height = (int) (picture.getHeight()*zoomFactor);
     BufferedImage bimg = picture.getBufferedImage();
     
-    // set the scroll image icon to the new image
-    imageDisplay.setImage(bimg.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-    imageDisplay.setCurrentX((int) (colIndex * zoomFactor));
-    imageDisplay.setCurrentY((int) (rowIndex * zoomFactor));
+    // set the scroll image icon to the new image; zooming out uses the
+    // picture's pyramid so the smaller sizes are only made once
+    if (zoomFactor < 1 && width >= 1 && height >= 1 && picture instanceof SimplePicture)
+      imageDisplay.setImage(((SimplePicture) picture).getPyramid()
+                              .getScaled(width, height).getBufferedImage());
+    else if (zoomFactor < 1)
+      imageDisplay.setImage(bimg.getScaledInstance(width, height, Image.SCALE_DEFAULT));
+    else
+      imageDisplay.setImage(bimg, zoomFactor);
+    imageDisplay.setCurrentLocation((int) (colIndex * zoomFactor),
+                                    (int) (rowIndex * zoomFactor));
+    showSelection();  // the outline moves and the picture may have changed
     imageDisplay.revalidate();
     checkScroll();  // check if need to reposition scroll
   }
   
+  /**
+   * Method to select a rectangle of the picture and show its statistics
+   * @param rect the rectangle in picture coordinates, or null for none
+   */
+  public void setSelection(Rectangle rect)
+  {
+    selection = rect == null ? null : new Rectangle(rect);
+    showSelection();
+  }
+  
+  /**
+   * Method to outline the selection and show its mean, standard
+   * deviation, smallest and largest values and histogram
+   */
+  private void showSelection()
+  {
+    if (selection != null
+        && !new Rectangle(0,0,picture.getWidth(),picture.getHeight()).contains(selection))
+      selection = null;
+    if (selection == null || selectionPanel == null)
+    {
+      // the panel stays up so the window doesn't jump with every click
+      imageDisplay.setSelection(null);
+      if (selectionPanel != null)
+      {
+        selectionLabel.setText("<html><pre>Drag to select</pre></html>");
+        histogramView.setHistogram(null);
+      }
+      return;
+    }
+    
+    // outline the pixels of the selection as they are shown
+    int left = (int) (selection.x * zoomFactor);
+    int top = (int) (selection.y * zoomFactor);
+    int right = (int) ((selection.x + selection.width) * zoomFactor);
+    int bottom = (int) ((selection.y + selection.height) * zoomFactor);
+    imageDisplay.setSelection(new Rectangle(left,top,Math.max(1,right - left),
+                                            Math.max(1,bottom - top)));
+    
+    // the numbers come from the tables for this version of the picture
+    RegionStatistics statistics = ((SimplePicture) picture).getRegionStatistics();
+    int x = selection.x;
+    int y = selection.y;
+    int width = selection.width;
+    int height = selection.height;
+    Histogram histogram = statistics.getHistogram(x,y,width,height);
+    StringBuilder text = new StringBuilder("<html><pre>");
+    text.append(String.format("x %d  y %d  %d x %d\n\n",x + numberBase,y + numberBase,
+                              width,height));
+    text.append("      mean      sd  min  max\n");
+    String[] names = {"R", "G", "B"};
+    for (int channel = 0; channel < 3; channel++)
+      text.append(String.format("%s  %7.2f  %6.2f  %3d  %3d\n",names[channel],
+                                statistics.getMean(channel,x,y,width,height),
+                                statistics.getStandardDeviation(channel,x,y,width,height),
+                                histogram.getMin(channel),histogram.getMax(channel)));
+    text.append("</pre></html>");
+    selectionLabel.setText(text.toString());
+    histogramView.setHistogram(histogram);
+    if (!selectionPanel.isVisible())
+    {
+      selectionPanel.setVisible(true);
+      pictureFrame.getContentPane().validate();
+    }
+  }
+  
+  /**
+   * Method to get the pixel of the picture under the mouse, moved to
+   * the nearest edge pixel if the mouse is outside the picture
+   * @param e a mouse event
+   * @return the x and y of the pixel
+   */
+  private Point pictureLocation(MouseEvent e)
+  {
+    int x = (int) (e.getX() / zoomFactor);
+    int y = (int) (e.getY() / zoomFactor);
+    return new Point(Math.max(0,Math.min(picture.getWidth() - 1,x)),
+                     Math.max(0,Math.min(picture.getHeight() - 1,y)));
+  }
+  
+  /**
+   * Method to get the filter for a filter menu item
+   * @param name the name of the menu item
+   * @return the filter, or null if there is none with that name
+   */
+  private BackgroundFilter.Filter getFilter(String name)
+  {
+    if (name.equals("Grayscale"))
+      return p -> p.grayscale(GrayscaleMode.REC_709);
+    if (name.equals("Blur"))
+      return p -> p.gaussianBlur(3);
+    if (name.equals("Sharpen"))
+      return p -> p.sharpen();
+    if (name.equals("Median"))
+      return p -> p.medianFilter(2);
+    if (name.equals("Equalize"))
+      return p -> p.equalizeAdaptive(8,2.5);
+    if (name.equals("Balance Colors"))
+      return p -> p.balanceColors(WhiteBalance.PERCENTILE);
+    if (name.equals("Edges"))
+      return p -> p.sobelEdgeDetection(200);
+    return null;
+  }
+  
+  /**
+   * Method to run a filter on the picture in the background.  A preview
+   * made from a small copy is shown first, then the picture is changed
+   * when the full-size filter is done.  A filter that is already running
+   * is cancelled.
+   * @param filter the filter to run
+   */
+  public void runFilter(BackgroundFilter.Filter filter)
+  {
+    if (runningFilter != null)
+      runningFilter.cancel();
+    final SimplePicture target = (SimplePicture) picture;
+    progressBar.setValue(0);
+    progressBar.setVisible(true);
+    cancelFilter.setEnabled(true);
+    pictureFrame.getContentPane().validate();
+    
+    runningFilter = BackgroundFilter.start(target, filter, PREVIEW_SIZE, new BackgroundFilter.Listener() {
+      public void previewReady(Picture preview)
+      {
+        // show the preview stretched over the picture
+        double scale = zoomFactor * picture.getWidth() / preview.getWidth();
+        imageDisplay.setImage(preview.getBufferedImage(), scale);
+      }
+      
+      public void progressChanged(double fraction)
+      {
+        progressBar.setValue((int) (fraction * 100));
+      }
+      
+      public void finished(Picture result)
+      {
+        int width = picture.getWidth();
+        int height = picture.getHeight();
+        picture.setBasicPixels(0,0,width,height,result.getBasicPixels(0,0,width,height));
+        filterDone();
+      }
+      
+      public void cancelled()
+      {
+        // a filter replaced by a newer one is cancelled too; leave that one be
+        if (runningFilter == null || runningFilter.isCancelled())
+          filterDone();
+      }
+      
+      public void failed(RuntimeException error)
+      {
+        filterDone();
+        if (pictureFrame.isDisplayable())
+          JOptionPane.showMessageDialog(pictureFrame,"The filter failed: " + error,
+                                        "Filter", JOptionPane.ERROR_MESSAGE);
+      }
+    });
+  }
+  
+  /**
+   * Method to go back to showing the picture after a filter is done
+   * or cancelled
+   */
+  private void filterDone()
+  {
+    runningFilter = null;
+    // nothing to show if the window was closed while the filter ran
+    if (!pictureFrame.isDisplayable())
+      return;
+    progressBar.setVisible(false);
+    cancelFilter.setEnabled(false);
+    pictureFrame.getContentPane().validate();
+    zoom(zoomFactor);
+  }
+  
+  /**
+   * Method to open a picture file in a new explorer without waiting for
+   * all of it to load.  A big file is first read at a fraction of its
+   * size, which is shown straight away, while the rest is read in the
+   * background with its progress in the progress bar.  The full picture
+   * then takes the small one's place at the same size on the screen, so
+   * zoom in to see its detail.  Filters can't be run until it is in.
+   * @param fileName the name of the file, found in the media path if
+   * it isn't found as given
+   */
+  public static void open(String fileName)
+  {
+    File file = new File(fileName);
+    if (!file.canRead())
+      file = new File(FileChooser.getMediaPath(fileName));
+    
+    OpenListener listener = new OpenListener(fileName);
+    listener.loader = ProgressiveLoader.start(file, LOAD_PREVIEW_SIZE, listener);
+  }
+  
   /**
    * Repaints the image on the scrollpane.  
    */
@@ -512,6 +805,16 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   public void mouseDragged(MouseEvent e)
   {
     displayPixelInformation(e);
+    
+    // stretch the selection from where the button was pushed to here
+    if (selectionStart != null)
+    {
+      Point end = pictureLocation(e);
+      setSelection(new Rectangle(Math.min(selectionStart.x,end.x),
+                                 Math.min(selectionStart.y,end.y),
+                                 Math.abs(end.x - selectionStart.x) + 1,
+                                 Math.abs(end.y - selectionStart.y) + 1));
+    }
   }
   
   /**
@@ -586,8 +889,8 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
     }
     
     // notify the image display of the current x and y
-    imageDisplay.setCurrentX((int) (colIndex * zoomFactor));
-    imageDisplay.setCurrentY((int) (rowIndex * zoomFactor));
+    imageDisplay.setCurrentLocation((int) (colIndex * zoomFactor),
+                                    (int) (rowIndex * zoomFactor));
   }
   
   /**
@@ -649,6 +952,11 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   public void mousePressed(MouseEvent e)
   {
     displayPixelInformation(e);
+    
+    // a new selection starts here, and a click without a drag clears it
+    if (selectionPanel != null)
+      selectionStart = pictureLocation(e);
+    setSelection(null);
   }
   
   /**
@@ -702,6 +1010,17 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
       this.repaint();
     }
     
+    if(a.getActionCommand().equals("Cancel Filter") && runningFilter != null)
+    {
+      runningFilter.cancel();
+    }
+    
+    BackgroundFilter.Filter filter = getFilter(a.getActionCommand());
+    if (filter != null && picture instanceof SimplePicture)
+    {
+      this.runFilter(filter);
+    }
+    
     if(a.getActionCommand().equals("25%"))
     {
       this.zoom(.25);
@@ -754,6 +1073,165 @@ public class PictureExplorer implements MouseMotionListener, ActionListener, Mou
   
   
   
+  /**
+   * Opens an explorer for a picture file as ProgressiveLoader hands over
+   * first a small version and then the full picture
+   */
+  private static class OpenListener implements ProgressiveLoader.Listener
+  {
+    /** the name of the file being opened */
+    private final String fileName;
+    /** the load, so closing the window can stop it */
+    private volatile ProgressiveLoader loader;
+    /** the picture shown, small until the full one has loaded */
+    private SimplePicture picture;
+    /** the explorer showing the picture, once there is one */
+    private PictureExplorer explorer;
+    
+    /**
+     * Constructor that takes the name of the file being opened
+     * @param fileName the name to use as the title
+     */
+    public OpenListener(String fileName)
+    {
+      this.fileName = fileName;
+    }
+    
+    public void previewLoaded(BufferedImage preview, int width, int height)
+    {
+      picture = new SimplePicture(preview);
+      picture.setTitle(fileName);
+      explorer = new PictureExplorer(picture);
+      explorer.pictureFrame.addWindowListener(new WindowAdapter() {
+        public void windowClosed(WindowEvent e)
+        {
+          // no need to decode the rest of a picture no one will see
+          ProgressiveLoader running = loader;
+          if (running != null)
+            running.cancel();
+        }
+      });
+      explorer.filterMenu.setEnabled(false);
+      explorer.progressBar.setValue(0);
+      explorer.progressBar.setVisible(true);
+      explorer.pictureFrame.getContentPane().validate();
+    }
+    
+    public void progressChanged(double fraction)
+    {
+      if (explorer != null)
+        explorer.progressBar.setValue((int) (fraction * 100));
+    }
+    
+    public void loaded(BufferedImage image)
+    {
+      if (explorer == null)
+      {
+        picture = new SimplePicture(image);
+        picture.setTitle(fileName);
+        explorer = new PictureExplorer(picture);
+        return;
+      }
+      // nothing to do if the window was closed while the file loaded
+      if (!explorer.pictureFrame.isDisplayable())
+        return;
+      
+      // keep the picture the same size on the screen and the same pixel selected
+      double scale = (double) image.getWidth() / picture.getWidth();
+      picture.setBufferedImage(image);
+      explorer.selectionStart = null;
+      explorer.selection = null;
+      explorer.colIndex = Math.min((int) (explorer.colIndex * scale), image.getWidth() - 1);
+      explorer.rowIndex = Math.min((int) (explorer.rowIndex * scale), image.getHeight() - 1);
+      explorer.filterMenu.setEnabled(true);
+      explorer.progressBar.setVisible(false);
+      explorer.pictureFrame.getContentPane().validate();
+      explorer.zoom(explorer.zoomFactor / scale);
+      explorer.enableZoomItems();
+      explorer.displayPixelInformation(explorer.colIndex, explorer.rowIndex);
+    }
+    
+    public void failed(IOException error)
+    {
+      if (explorer != null)
+        explorer.progressBar.setVisible(false);
+      JOptionPane.showMessageDialog(explorer == null ? null : explorer.pictureFrame,
+                                    fileName + " could not be opened: " + error.getMessage(),
+                                    "Open", JOptionPane.ERROR_MESSAGE);
+    }
+  }
+  
+  /**
+   * Draws the counts of the red, green and blue values of a histogram
+   * as three lines, scaled so the biggest count reaches the top
+   */
+  private static class HistogramView extends JComponent
+  {
+    private static final long serialVersionUID = 1L;
+    
+    /** the counts of each channel, or null if there is no histogram */
+    private int[][] counts;
+    
+    /**
+     * Constructor that makes the view a pixel wide for each value
+     */
+    public HistogramView()
+    {
+      setPreferredSize(new Dimension(Histogram.VALUES,80));
+    }
+    
+    /**
+     * Method to show a histogram
+     * @param histogram the histogram to show, or null for none
+     */
+    public void setHistogram(Histogram histogram)
+    {
+      if (histogram == null)
+      {
+        counts = null;
+        repaint();
+        return;
+      }
+      counts = new int[3][];
+      for (int channel = 0; channel < 3; channel++)
+        counts[channel] = histogram.getCounts(channel);
+      repaint();
+    }
+    
+    /**
+     * Method to draw the histogram
+     * @param g the graphics object for drawing with
+     */
+    protected void paintComponent(Graphics g)
+    {
+      g.setColor(Color.white);
+      g.fillRect(0,0,getWidth(),getHeight());
+      if (counts == null)
+        return;
+      int most = 1;
+      for (int[] bins : counts)
+        for (int count : bins)
+          most = Math.max(most,count);
+      
+      Color[] colors = {Color.red, new Color(0,160,0), Color.blue};
+      int bottom = getHeight() - 1;
+      for (int channel = 0; channel < 3; channel++)
+      {
+        g.setColor(colors[channel]);
+        int lastX = 0;
+        int lastY = bottom;
+        for (int value = 0; value < Histogram.VALUES; value++)
+        {
+          int x = value * getWidth() / Histogram.VALUES;
+          int y = bottom - (int) ((long) counts[channel][value] * bottom / most);
+          g.drawLine(lastX,lastY,x,y);
+          lastX = x;
+          lastY = y;
+        }
+      }
+    }
+  }
+  
   /**
    * Class for establishing the focus for the textfields
    */
@@ -1,5 +1,6 @@
 import javax.swing.*;
 import java.awt.*;
+import java.util.List;
 
 /**
  * Class that holds a digital picture and displays it using a JFrame
@@ -59,6 +60,7 @@ public class PictureFrame
   {
     this.picture = picture;
     imageIcon.setImage(picture.getImage());
+    picture.getDirtyRegion().clear();
     frame.pack();
     frame.repaint();
   }
@@ -72,8 +74,16 @@ public class PictureFrame
     // only do this if there is a picture
     if (picture != null)
     {
-      // set the image for the image icon from the picture
-      imageIcon.setImage(picture.getImage());
+      // set the image for the image icon from the picture, unless it is
+      // the image already showing
+      Image image = picture.getImage();
+      if (imageIcon.getImage() != image)
+      {
+        imageIcon.setImage(image);
+        
+        // the whole image is drawn fresh, so earlier changes are covered
+        picture.getDirtyRegion().clear();
+      }
       
       // set the title of the frame to the title of the picture
       frame.setTitle(picture.getTitle());
@@ -138,7 +148,9 @@ public class PictureFrame
   }
   
   /**
-   * Method to force the picture frame to repaint (redraw)
+   * Method to force the picture frame to repaint (redraw).  If the
+   * picture still has the same image, only the parts of it that have
+   * changed since the last repaint are redrawn.
    */
   public void repaint()
   {
@@ -147,10 +159,37 @@ public class PictureFrame
     frame.setVisible(true);
     
     // update the image from the picture
+    Image before = imageIcon.getImage();
     updateImage();
     
     // tell the JFrame to handle the repaint
-    frame.repaint();
+    if (picture == null || imageIcon.getImage() != before)
+      frame.repaint();
+    else
+      repaintChanges();
+  }
+  
+  /**
+   * Method to redraw just the changed parts of the picture, taking
+   * them from the picture's dirty region
+   */
+  private void repaintChanges()
+  {
+    List<Rectangle> changed = picture.getDirtyRegion().takeRectangles();
+    if (changed.isEmpty())
+      return;
+    
+    // the label centers the image in itself
+    Insets insets = label.getInsets();
+    int left = insets.left + (label.getWidth() - insets.left - insets.right
+                              - imageIcon.getIconWidth()) / 2;
+    int top = insets.top + (label.getHeight() - insets.top - insets.bottom
+                            - imageIcon.getIconHeight()) / 2;
+    for (Rectangle rect : changed)
+    {
+      // one pixel extra around each, in case the centering rounds the other way
+      label.repaint(left + rect.x - 1,top + rect.y - 1,rect.width + 2,rect.height + 2);
+    }
   }
   
   /**
@@ -172,4 +211,4 @@ public class PictureFrame
     frame.setVisible(true);
   }
   
-}
\ No newline at end of file
+}
\ No newline at end of file
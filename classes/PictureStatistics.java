@@ -0,0 +1,296 @@
+/**
+ * Totals, averages and counts of the red, green and blue values of
+ * every row and every column of a picture.
+ *
+ * All of them are found in one pass over the pixels in row-major
+ * order: each pixel is added to its row's total and to its column's
+ * total, so a column never has to be walked down on its own.  Bands of
+ * rows run in parallel, each with its own column totals that are added
+ * together at the end.  The results are kept until the picture changes,
+ * so asking about many columns costs one pass, not one pass each.
+ *
+ * Counts of values over a threshold depend on the threshold, so they
+ * are found (again for all rows and columns in one pass) the first time
+ * a threshold is asked about, and the last threshold of each channel is
+ * kept.
+ */
+public class PictureStatistics
+{
+  /** channel numbers */
+  public static final int RED = 0;
+  public static final int GREEN = 1;
+  public static final int BLUE = 2;
+
+  /** the picture the statistics are for */
+  private final SimplePicture picture;
+
+  /** the version of the picture the totals were found for */
+  private long version = -1;
+
+  /** the width and height of the picture when the totals were found */
+  private int width;
+  private int height;
+
+  /** the totals of each channel for every row and every column */
+  private long[][] rowSums;
+  private long[][] columnSums;
+
+  /** the last counts found for each channel, or null */
+  private final Counts[] counts = new Counts[3];
+
+  /**
+   * Constructor that makes statistics for a picture.  Nothing is
+   * worked out until it is asked for.
+   * @param picture the picture to describe
+   */
+  public PictureStatistics(SimplePicture picture)
+  {
+    this.picture = picture;
+  }
+
+  /**
+   * Method to get the total of a channel over a row
+   * @param channel RED, GREEN or BLUE
+   * @param row the row
+   * @return the total of the channel's values in the row
+   */
+  public long getRowSum(int channel, int row)
+  {
+    return sums()[channel][row];
+  }
+
+  /**
+   * Method to get the total of a channel over a column
+   * @param channel RED, GREEN or BLUE
+   * @param col the column
+   * @return the total of the channel's values in the column
+   */
+  public long getColumnSum(int channel, int col)
+  {
+    update();
+    return columnSums[channel][col];
+  }
+
+  /**
+   * Method to get the average of a channel over a row
+   * @param channel RED, GREEN or BLUE
+   * @param row the row
+   * @return the average value
+   */
+  public double getRowAverage(int channel, int row)
+  {
+    return (double) getRowSum(channel, row) / width;
+  }
+
+  /**
+   * Method to get the average of a channel over a column
+   * @param channel RED, GREEN or BLUE
+   * @param col the column
+   * @return the average value
+   */
+  public double getColumnAverage(int channel, int col)
+  {
+    return (double) getColumnSum(channel, col) / height;
+  }
+
+  /**
+   * Method to get the totals of a channel for all rows
+   * @param channel RED, GREEN or BLUE
+   * @return a copy of the totals, one per row
+   */
+  public long[] getRowSums(int channel)
+  {
+    return sums()[channel].clone();
+  }
+
+  /**
+   * Method to get the totals of a channel for all columns
+   * @param channel RED, GREEN or BLUE
+   * @return a copy of the totals, one per column
+   */
+  public long[] getColumnSums(int channel)
+  {
+    update();
+    return columnSums[channel].clone();
+  }
+
+  /**
+   * Method to get the total of a channel over the whole picture
+   * @param channel RED, GREEN or BLUE
+   * @return the total of the channel's values
+   */
+  public long getTotal(int channel)
+  {
+    long total = 0;
+    for (long sum : sums()[channel])
+      total += sum;
+    return total;
+  }
+
+  /**
+   * Method to count the values of a channel over a threshold in a row
+   * @param channel RED, GREEN or BLUE
+   * @param value the threshold
+   * @param row the row
+   * @return how many pixels in the row have a channel value over the threshold
+   */
+  public int getRowCountOver(int channel, int value, int row)
+  {
+    return counts(channel, value).rows[row];
+  }
+
+  /**
+   * Method to count the values of a channel over a threshold in a column
+   * @param channel RED, GREEN or BLUE
+   * @param value the threshold
+   * @param col the column
+   * @return how many pixels in the column have a channel value over the threshold
+   */
+  public int getColumnCountOver(int channel, int value, int col)
+  {
+    return counts(channel, value).columns[col];
+  }
+
+  /**
+   * Method to count the values of a channel over a threshold in the picture
+   * @param channel RED, GREEN or BLUE
+   * @param value the threshold
+   * @return how many pixels have a channel value over the threshold
+   */
+  public long getCountOver(int channel, int value)
+  {
+    long total = 0;
+    for (int count : counts(channel, value).rows)
+      total += count;
+    return total;
+  }
+
+  /**
+   * Method to check that the picture has not changed since the
+   * statistics were last worked out
+   * @return true if the statistics still match the picture
+   */
+  public boolean isUpToDate()
+  {
+    return picture.getVersion() == version;
+  }
+
+  /**
+   * Method to get the row totals, bringing everything up to date first
+   */
+  private long[][] sums()
+  {
+    update();
+    return rowSums;
+  }
+
+  /**
+   * Method to find the row and column totals again if the picture has
+   * changed since they were found
+   */
+  private synchronized void update()
+  {
+    long current = picture.getVersion();
+    if (current == version)
+      return;
+    width = picture.getWidth();
+    height = picture.getHeight();
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    long[][] rows = new long[3][height];
+    long[][] columns = new long[3][width];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      long[][] bandColumns = new long[3][width];
+      for (int row = startRow; row < endRow; row++)
+      {
+        long red = 0, green = 0, blue = 0;
+        int start = row * width;
+        for (int col = 0; col < width; col++)
+        {
+          int rgb = pixels[start + col];
+          int r = (rgb >> 16) & 0xff;
+          int g = (rgb >> 8) & 0xff;
+          int b = rgb & 0xff;
+          red += r;
+          green += g;
+          blue += b;
+          bandColumns[RED][col] += r;
+          bandColumns[GREEN][col] += g;
+          bandColumns[BLUE][col] += b;
+        }
+        rows[RED][row] = red;
+        rows[GREEN][row] = green;
+        rows[BLUE][row] = blue;
+      }
+      synchronized (columns)
+      {
+        for (int channel = 0; channel < 3; channel++)
+          for (int col = 0; col < width; col++)
+            columns[channel][col] += bandColumns[channel][col];
+      }
+    });
+    rowSums = rows;
+    columnSums = columns;
+    for (int channel = 0; channel < 3; channel++)
+      counts[channel] = null;
+    version = current;
+  }
+
+  /**
+   * Method to get the counts over a threshold for one channel, finding
+   * them if they are not the ones kept
+   * @param channel RED, GREEN or BLUE
+   * @param value the threshold
+   * @return the counts
+   */
+  private synchronized Counts counts(int channel, int value)
+  {
+    update();
+    Counts kept = counts[channel];
+    if (kept != null && kept.value == value)
+      return kept;
+
+    int shift = 16 - 8 * channel;
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    Counts found = new Counts(value, width, height);
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      int[] bandColumns = new int[width];
+      for (int row = startRow; row < endRow; row++)
+      {
+        int count = 0;
+        int start = row * width;
+        for (int col = 0; col < width; col++)
+        {
+          // 1 if over the threshold, 0 if not, without a branch
+          int over = (value - ((pixels[start + col] >> shift) & 0xff)) >>> 31;
+          count += over;
+          bandColumns[col] += over;
+        }
+        found.rows[row] = count;
+      }
+      synchronized (found)
+      {
+        for (int col = 0; col < width; col++)
+          found.columns[col] += bandColumns[col];
+      }
+    });
+    counts[channel] = found;
+    return found;
+  }
+
+  /**
+   * The counts over one threshold of one channel
+   */
+  private static class Counts
+  {
+    private final int value;
+    private final int[] rows;
+    private final int[] columns;
+
+    Counts(int value, int width, int height)
+    {
+      this.value = value;
+      this.rows = new int[height];
+      this.columns = new int[width];
+    }
+  }
+}
@@ -1,3 +1,6 @@
+import java.awt.Color;
+import java.io.*;
+
 /**
  * This class contains class (static) methods
  * that will help you test the Picture class 
@@ -38,6 +41,18 @@ public class PictureTester
     beach.explore();
   }
 
+  /** Method to compare the grayscale modes */
+  private static void testGrayscaleModes() {
+    Picture flowers = new Picture("flower1.jpg");
+    for (GrayscaleMode mode : GrayscaleMode.values())
+    {
+      Picture gray = new Picture(flowers);
+      gray.grayscale(mode);
+      gray.setTitle(mode.toString());
+      gray.explore();
+    }
+  }
+
   /** Method to test mirrorVertical */
   public static void testMirrorVertical()
   {
@@ -105,6 +120,14 @@ public class PictureTester
     seagull.explore();
   }
 
+  public static void testFloodFill()
+  {
+    Picture beach = new Picture("beach.jpg");
+    BinaryImage filled = beach.floodFill(200, 20, Color.ORANGE, 30);
+    System.out.println(filled.count() + " pixels filled");
+    beach.explore();
+  }
+
   /** Method to test the collage method */
   public static void testCollage()
   {
@@ -121,6 +144,36 @@ public class PictureTester
     underwater.explore();
   }
 
+  public static void testFixUnderwaterDenoised()
+  {
+    Picture underwater = new Picture("water.jpg");
+    underwater.explore();
+    underwater.fixUnderwater(2);
+    underwater.explore();
+  }
+
+  public static void testEqualizeAdaptive()
+  {
+    Picture underwater = new Picture("water.jpg");
+    underwater.explore();
+    underwater.equalizeAdaptive(8, 2.5);
+    underwater.explore();
+  }
+
+  /** Method to compare the ways of balancing colors */
+  public static void testBalanceColors()
+  {
+    Picture underwater = new Picture("water.jpg");
+    underwater.explore();
+    for (WhiteBalance mode : WhiteBalance.values())
+    {
+      Picture balanced = new Picture(underwater);
+      balanced.balanceColors(mode);
+      balanced.setTitle(mode.toString());
+      balanced.explore();
+    }
+  }
+
   public static void testCopy()
   {
     Picture mark = new Picture("blue-mark.jpg");
@@ -130,6 +183,87 @@ public class PictureTester
     snowman.explore();
   }
 
+  /** Method to test shrinking a picture to thumbnail sizes */
+  public static void testScale()
+  {
+    Picture beach = new Picture("beach.jpg");
+    int[] widths = {320, 160, 100, 64};
+    for (int width : widths)
+    {
+      Picture small = beach.getPictureWithWidth(width);
+      small.setTitle("width " + width);
+      small.explore();
+    }
+  }
+
+  /** Method to test rotating with each kind of interpolation */
+  public static void testRotate()
+  {
+    Picture beach = new Picture("beach.jpg");
+    for (Interpolation interpolation : Interpolation.values())
+    {
+      Picture rotated = beach.rotate(17, interpolation);
+      rotated.setTitle("rotated 17 degrees, " + interpolation);
+      rotated.explore();
+    }
+  }
+
+  /** Method to test opening a picture that shows up before it has loaded */
+  public static void testOpenProgressively()
+  {
+    PictureExplorer.open("temple.jpg");
+  }
+
+  /** Method to test the statistics of a rectangle, as the explorer shows for a selection */
+  public static void testRegionStatistics()
+  {
+    Picture beach = new Picture("beach.jpg");
+    RegionStatistics statistics = beach.getRegionStatistics();
+    int width = beach.getWidth();
+    Histogram sky = statistics.getHistogram(0,0,width,100);
+    System.out.println("sky blue: mean " + statistics.getMean(RegionStatistics.BLUE,0,0,width,100)
+                       + ", standard deviation "
+                       + statistics.getStandardDeviation(RegionStatistics.BLUE,0,0,width,100)
+                       + ", from " + sky.getMin(Histogram.BLUE) + " to " + sky.getMax(Histogram.BLUE));
+    beach.explore();
+  }
+
+  /** Method to test chromakey by putting Mark on the moon */
+  public static void testChromakey()
+  {
+    Picture mark = new Picture("blue-mark.jpg");
+    Picture moon = new Picture("moon-surface.jpg");
+    mark.explore();
+    mark.chromakey(moon, new Color(10, 30, 55), 25, 15, true);
+    mark.explore();
+  }
+
+  /** Method to test hiding a message picture and a line of text */
+  public static void testEncodeAndDecode()
+  {
+    Picture beach = new Picture("beach.jpg");
+    Picture message = new Picture("msg.jpg");
+    beach.encode(message);
+    beach.explore();
+    beach.decode().explore();
+
+    int channels = Steganography.GREEN + Steganography.BLUE;
+    try
+    {
+      byte[] text = "Meet me at the beach".getBytes("UTF-8");
+      beach.encode(new ByteArrayInputStream(text), channels, 1);
+      ByteArrayOutputStream found = new ByteArrayOutputStream();
+      beach.decode(found, channels, 1);
+      System.out.println(found.toString("UTF-8") + " ("
+                         + Steganography.capacity(beach, channels, 1)
+                         + " bytes would fit)");
+    }
+    catch (IOException ex)
+    {
+      System.out.println(ex.getMessage());
+    }
+  }
+
   public static void testMyCollage()
   {
     Picture moon = new Picture("moon-surface.jpg");
@@ -152,6 +286,119 @@ public class PictureTester
     swan.explore();
   }
 
+  public static void testSobelEdgeDetection()
+  {
+    Picture swan = new Picture("swan.jpg");
+    swan.sobelEdgeDetection(120);
+    swan.explore();
+  }
+
+  public static void testCannyEdgeDetection()
+  {
+    Picture swan = new Picture("swan.jpg");
+    swan.cannyEdgeDetection(40, 100);
+    swan.explore();
+  }
+
+  public static void testGaussianBlur()
+  {
+    Picture beach = new Picture("beach.jpg");
+    beach.explore();
+    beach.gaussianBlur(3);
+    beach.explore();
+  }
+
+  public static void testSharpen()
+  {
+    Picture beach = new Picture("beach.jpg");
+    beach.explore();
+    beach.sharpen();
+    beach.explore();
+  }
+
+  /** Method to test cleaning up an edge picture with a morphological close */
+  public static void testCloseEdges()
+  {
+    Picture swan = new Picture("swan.jpg");
+    swan.edgeDetection(10);
+    BinaryImage edges = BinaryImage.fromPicture(swan);
+    Morphology.close(edges, 1, 1).toPicture().explore();
+  }
+
+  /** Method to test counting and measuring the regions of an edge picture */
+  public static void testConnectedComponents()
+  {
+    Picture swan = new Picture("swan.jpg");
+    swan.cannyEdgeDetection(40, 100);
+    ConnectedComponents regions =
+      new ConnectedComponents(BinaryImage.fromPicture(swan), true);
+    System.out.println(regions.getCount() + " edges found");
+    for (int label = 1; label <= regions.getCount(); label++)
+    {
+      if (regions.getArea(label) >= 100)
+        System.out.println("edge " + label + ": " + regions.getArea(label)
+                           + " pixels in " + regions.getBounds(label));
+    }
+  }
+
+  /** Method to test EdgeMap by sweeping the edge distance */
+  public static void testEdgeMap()
+  {
+    Picture swan = new Picture("swan.jpg");
+    EdgeMap edges = new EdgeMap(swan);
+    for (int edgeDist = 10; edgeDist <= 40; edgeDist += 10)
+    {
+      Picture result = edges.edgeDetection2(edgeDist);
+      result.setTitle("edgeDetection2(" + edgeDist + ")");
+      result.explore();
+    }
+  }
+
+  public static void testGetCountRedOverValue(int value)
+  {
+    Picture beach = new Picture("beach.jpg");
+    System.out.println(beach.getCountRedOverValue(value)
+                       + " pixels have red over " + value);
+  }
+
+  public static void testSetRedToHalfValueInTopHalf()
+  {
+    Picture beach = new Picture("beach.jpg");
+    beach.explore();
+    beach.setRedToHalfValueInTopHalf();
+    beach.explore();
+  }
+
+  public static void testClearBlueOverValue(int value)
+  {
+    Picture beach = new Picture("beach.jpg");
+    beach.explore();
+    beach.clearBlueOverValue(value);
+    beach.explore();
+  }
+
+  /** Method to test getAverageForColumn on a few columns */
+  public static void testGetAverageForColumn(int col)
+  {
+    Picture beach = new Picture("beach.jpg");
+    for (int c = col; c < beach.getWidth(); c += 100)
+      System.out.println("column " + c + ": " + beach.getAverageForColumn(c));
+  }
+
+  /** Method to test that the histogram follows changes to the picture */
+  public static void testHistogram()
+  {
+    Picture beach = new Picture("beach.jpg");
+    Histogram histogram = beach.getHistogram();
+    System.out.println("blue from " + histogram.getMin(Histogram.BLUE)
+                       + " to " + histogram.getMax(Histogram.BLUE)
+                       + ", median " + histogram.getPercentile(Histogram.BLUE, 0.5));
+    beach.clearBlueOverValue(200);
+    System.out.println("after clearBlueOverValue(200): blue up to "
+                       + histogram.getMax(Histogram.BLUE) + ", "
+                       + histogram.getCount(Histogram.BLUE, 0) + " pixels with no blue");
+  }
+
   /** Main method for testing.  Every class can have a main
     * method in Java */
   public static void main(String[] args)
@@ -165,7 +412,11 @@ public class PictureTester
     //testKeepOnlyGreen();
 //    testNegate();
 //    testGrayscale();
+//    testGrayscaleModes();
 //    testFixUnderwater();
+//    testFixUnderwaterDenoised();
+//    testEqualizeAdaptive();
+//    testBalanceColors();
 //    testMirrorVertical();
 //    testMirrorVerticalRTL();
 //    testMirrorHorizontal();
@@ -174,16 +425,29 @@ public class PictureTester
 //    testMirrorArms();
 //    testMirrorGull();
 //    testMirrorDiagonal();
+//    testFloodFill();
 //    testCollage();
 //    testMyCollage();
 //    testCopy();
+//    testScale();
+//    testRotate();
+//    testOpenProgressively();
+//    testRegionStatistics();
     testEdgeDetection();
     testEdgeDetection2();
-    //testChromakey();
-    //testEncodeAndDecode();
-    //testGetCountRedOverValue(250);
-    //testSetRedToHalfValueInTopHalf();
-    //testClearBlueOverValue(200);
-    //testGetAverageForColumn(0);
-  }
-}
\ No newline at end of file
+//    testEdgeMap();
+//    testCloseEdges();
+//    testConnectedComponents();
+//    testSobelEdgeDetection();
+//    testCannyEdgeDetection();
+//    testGaussianBlur();
+//    testSharpen();
+//    testChromakey();
+//    testEncodeAndDecode();
+//    testGetCountRedOverValue(250);
+//    testSetRedToHalfValueInTopHalf();
+//    testClearBlueOverValue(200);
+//    testGetAverageForColumn(0);
+//    testHistogram();
+  }
+}
\ No newline at end of file
@@ -0,0 +1,219 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Loads a picture file in two steps on a background thread, so a big
+ * file can be shown long before all of it has been decoded.
+ *
+ * First a small version is read by asking the image reader to keep
+ * only every n-th pixel of every n-th row (source subsampling), which
+ * needs a fraction of the time and memory.  Then the whole image is
+ * read, with the reader's progress passed on as it goes.  Everything
+ * is handed to the listener on the Swing event thread.
+ */
+public class ProgressiveLoader
+{
+  /**
+   * Something that wants the versions of a picture as they are loaded.
+   * All of these are called on the Swing event thread.
+   */
+  public interface Listener
+  {
+    /**
+     * Method called with the small version, if the file is big enough
+     * to need one
+     * @param preview the small version of the picture
+     * @param width the width of the full picture
+     * @param height the height of the full picture
+     */
+    void previewLoaded(BufferedImage preview, int width, int height);
+
+    /**
+     * Method called as more of the full picture is read
+     * @param fraction how much is read, from 0 to 1
+     */
+    void progressChanged(double fraction);
+
+    /**
+     * Method called with the full picture
+     * @param image the full picture
+     */
+    void loaded(BufferedImage image);
+
+    /**
+     * Method called instead of loaded if the file can't be read
+     * @param error what went wrong
+     */
+    void failed(IOException error);
+  }
+
+  /** the file to load */
+  private final File file;
+
+  /** the largest width or height of the small version */
+  private final int previewSize;
+
+  /** who to hand the pictures to */
+  private final Listener listener;
+
+  /** set when the load should stop */
+  private volatile boolean cancelled;
+
+  /** the last whole percent reported, so the event thread isn't flooded */
+  private int lastPercent = -1;
+
+  /** set once the full picture is being read, whose progress is reported */
+  private boolean readingFull;
+
+  /**
+   * Constructor that sets up a load; use start to make one
+   */
+  private ProgressiveLoader(File file, int previewSize, Listener listener)
+  {
+    this.file = file;
+    this.previewSize = previewSize;
+    this.listener = listener;
+  }
+
+  /**
+   * Method to start loading a picture file in the background
+   * @param file the file to load
+   * @param previewSize the largest width or height of the small
+   * version, such as 1024; no small version is made if the picture is
+   * no bigger than this or if this is 0
+   * @param listener who to hand the pictures to
+   * @return the running load, which can be cancelled
+   */
+  public static ProgressiveLoader start(File file, int previewSize, Listener listener)
+  {
+    ProgressiveLoader loader = new ProgressiveLoader(file, previewSize, listener);
+    // not a daemon thread, so the program waits for the picture to show
+    Thread thread = new Thread(() -> loader.load(), "progressive loader");
+    thread.start();
+    return loader;
+  }
+
+  /**
+   * Method to stop the load.  The listener hears nothing more.  Readers
+   * only take orders from the thread using them, so the reader is told
+   * to stop the next time it reports its progress.
+   */
+  public void cancel()
+  {
+    cancelled = true;
+  }
+
+  /**
+   * Method to do the loading, on the background thread
+   */
+  private void load()
+  {
+    try (ImageInputStream stream = ImageIO.createImageInputStream(file))
+    {
+      if (stream == null)
+        throw new IOException(file + " could not be opened");
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+      if (!readers.hasNext())
+        throw new IOException(file + " is not a picture file that can be read");
+      ImageReader imageReader = readers.next();
+      try
+      {
+        // not seek-forward-only, so the image can be read a second time
+        imageReader.setInput(stream, false, true);
+        imageReader.addIIOReadProgressListener(new ProgressRelay());
+        int width = imageReader.getWidth(0);
+        int height = imageReader.getHeight(0);
+        int largest = Math.max(width, height);
+        if (previewSize > 0 && largest > previewSize)
+        {
+          int step = (largest + previewSize - 1) / previewSize;
+          ImageReadParam param = imageReader.getDefaultReadParam();
+          param.setSourceSubsampling(step, step, 0, 0);
+          BufferedImage preview = imageReader.read(0, param);
+          if (cancelled)
+            return;
+          SwingUtilities.invokeLater(() -> {
+            if (!cancelled)
+              listener.previewLoaded(preview, width, height);
+          });
+        }
+
+        readingFull = true;
+        BufferedImage image = imageReader.read(0);
+        if (cancelled)
+          return;
+        SwingUtilities.invokeLater(() -> {
+          if (!cancelled)
+            listener.loaded(image);
+        });
+      }
+      finally
+      {
+        imageReader.dispose();
+      }
+    }
+    catch (IOException ex)
+    {
+      reportFailure(ex);
+    }
+    catch (RuntimeException ex)
+    {
+      // readers throw these for some damaged files
+      reportFailure(new IOException(file + " could not be read: " + ex, ex));
+    }
+  }
+
+  /**
+   * Method to hand a failure to the listener, unless the load was cancelled
+   * @param error what went wrong
+   */
+  private void reportFailure(IOException error)
+  {
+    if (!cancelled)
+      SwingUtilities.invokeLater(() -> listener.failed(error));
+  }
+
+  /**
+   * Passes the reader's progress with the full picture on to the
+   * listener, at most once for each whole percent, and stops the reader
+   * if the load is cancelled, even while it reads the small version
+   */
+  private class ProgressRelay implements IIOReadProgressListener
+  {
+    public void imageProgress(ImageReader source, float percentageDone)
+    {
+      if (cancelled)
+      {
+        source.abort();
+        return;
+      }
+      if (!readingFull)
+        return;
+      int percent = (int) percentageDone;
+      if (percent == lastPercent)
+        return;
+      lastPercent = percent;
+      SwingUtilities.invokeLater(() -> {
+        if (!cancelled)
+          listener.progressChanged(percent / 100.0);
+      });
+    }
+
+    public void sequenceStarted(ImageReader source, int minIndex) {}
+    public void sequenceComplete(ImageReader source) {}
+    public void imageStarted(ImageReader source, int imageIndex) {}
+    public void imageComplete(ImageReader source) {}
+    public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {}
+    public void thumbnailProgress(ImageReader source, float percentageDone) {}
+    public void thumbnailComplete(ImageReader source) {}
+    public void readAborted(ImageReader source) {}
+  }
+}
@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A picture at a series of smaller sizes, each half the width and
+ * height of the one before, for showing or copying a picture smaller
+ * many times without shrinking the whole picture every time.  Level 0
+ * is the picture itself, level 1 is half size, level 2 a quarter, and
+ * so on down to a single pixel.
+ *
+ * Levels are made the first time they are needed, each from the level
+ * above it, so a level costs only a quarter as much as the one before.
+ * Any smaller size is made from the smallest level that is still at
+ * least that big, which is never more than twice as big, so the work
+ * is the same whatever size is asked for.  When the picture changes
+ * (its version goes up) the levels are thrown away and made again.
+ */
+public class Pyramid
+{
+  /** the picture at full size */
+  private final SimplePicture picture;
+
+  /** the levels made so far, from level 1 down */
+  private final List<Picture> levels = new ArrayList<Picture>();
+
+  /** the version of the picture the levels were made from */
+  private long version;
+
+  /**
+   * Constructor that takes the picture to shrink
+   * @param picture the picture at full size
+   */
+  public Pyramid(SimplePicture picture)
+  {
+    this.picture = picture;
+    this.version = picture.getVersion();
+  }
+
+  /**
+   * Method to get the number of levels, counting the picture itself
+   * @return the number of levels down to a single pixel
+   */
+  public int getLevelCount()
+  {
+    int count = 1;
+    for (int width = picture.getWidth(), height = picture.getHeight();
+         width > 1 || height > 1; width = half(width), height = half(height))
+      count++;
+    return count;
+  }
+
+  /**
+   * Method to get one level of the pyramid.  Level 0 is the picture
+   * itself; the others are shared, so copy them before changing them.
+   * @param level the level, from 0 to getLevelCount() - 1
+   * @return the picture at that level
+   */
+  public synchronized SimplePicture getLevel(int level)
+  {
+    if (level < 0 || level >= getLevelCount())
+      throw new IllegalArgumentException("no level " + level + " in a pyramid of "
+                                         + getLevelCount());
+    if (level == 0)
+      return picture;
+    if (version != picture.getVersion())
+    {
+      levels.clear();
+      version = picture.getVersion();
+    }
+    while (levels.size() < level)
+    {
+      SimplePicture above = levels.isEmpty() ? picture : levels.get(levels.size() - 1);
+      levels.add(Downscaler.scale(above, half(above.getWidth()), half(above.getHeight())));
+    }
+    return levels.get(level - 1);
+  }
+
+  /**
+   * Method to make a smaller copy of the picture from the closest level
+   * @param width the width of the copy, from 1 to the picture's width
+   * @param height the height of the copy, from 1 to the picture's height
+   * @return the new picture, which can be changed freely
+   */
+  public Picture getScaled(int width, int height)
+  {
+    if (width < 1 || height < 1 || width > picture.getWidth() || height > picture.getHeight())
+      throw new IllegalArgumentException("cannot shrink a " + picture.getWidth() + "x"
+                                         + picture.getHeight() + " picture to " + width + "x" + height);
+    // the smallest level that is still at least as big as asked for
+    int level = 0;
+    int levelWidth = picture.getWidth();
+    int levelHeight = picture.getHeight();
+    while (half(levelWidth) >= width && half(levelHeight) >= height
+           && (levelWidth > 1 || levelHeight > 1))
+    {
+      levelWidth = half(levelWidth);
+      levelHeight = half(levelHeight);
+      level++;
+    }
+    return Downscaler.scale(getLevel(level), width, height);
+  }
+
+  /**
+   * Method to make a smaller copy of the picture from the closest level
+   * @param factor how much to shrink by, from 0 to 1
+   * @return the new picture, which can be changed freely
+   */
+  public Picture getScaled(double factor)
+  {
+    int width = Math.max(1, (int) (picture.getWidth() * factor));
+    int height = Math.max(1, (int) (picture.getHeight() * factor));
+    return getScaled(width, height);
+  }
+
+  /**
+   * Method to halve a width or height, keeping at least one pixel
+   */
+  private static int half(int length)
+  {
+    return Math.max(1, length / 2);
+  }
+}
@@ -0,0 +1,275 @@
+/**
+ * The mean, standard deviation and histogram of any rectangle of a
+ * picture, found in a time that hardly depends on how big the rectangle
+ * is, so the numbers for a selection can be shown while it is dragged.
+ *
+ * The picture is split into square tiles and the tile histograms are
+ * summed like an integral image: entry (i, j) counts all of the tiles
+ * above and to the left of tile corner (i, j), so the whole tiles
+ * inside a rectangle take four histograms.  Only the pixels along the
+ * rectangle's edges that cover just part of a tile are counted one by
+ * one, which is less than a tile's width all the way around.  The
+ * histogram holds the sums and sums of squares of every channel, so
+ * the mean and standard deviation come from it exactly.
+ *
+ * The tables take about one histogram per tile, a few bytes per pixel,
+ * and are made a band of tile rows at a time without copying the whole
+ * picture.  They describe the picture as it was when they were made;
+ * SimplePicture.getRegionStatistics keeps one set per picture and
+ * makes it again when the version changes.
+ */
+public class RegionStatistics
+{
+  /** channel numbers */
+  public static final int RED = 0;
+  public static final int GREEN = 1;
+  public static final int BLUE = 2;
+
+  /** the width and height of a tile */
+  private static final int TILE_SIZE = 64;
+
+  /** the picture the tables were made from */
+  private final SimplePicture picture;
+
+  /** the version of the picture when the tables were made */
+  private final long version;
+
+  /** the width and height of the picture */
+  private final int width;
+  private final int height;
+
+  /** the number of tiles across and down, counting partial ones at the edges */
+  private final int tileColumns;
+  private final int tileRows;
+
+  /** the summed tile histograms, (tileColumns + 1) by (tileRows + 1) */
+  private final Histogram[] tileSums;
+
+  /** the last rectangle measured, so asking about it again is free */
+  private Region last;
+
+  /**
+   * Constructor that builds the tables for a picture
+   * @param picture the picture to describe
+   */
+  public RegionStatistics(SimplePicture picture)
+  {
+    this.picture = picture;
+    this.version = picture.getVersion();
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    this.tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+    this.tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+    int stride = tileColumns + 1;
+    tileSums = new Histogram[stride * (tileRows + 1)];
+    for (int i = 0; i < stride; i++)
+      tileSums[i] = new Histogram();
+
+    // each tile row counts its tiles from the left in parallel ...
+    ParallelRows.forEachBand(tileRows, 1, (startRow, endRow) -> {
+      for (int tileRow = startRow; tileRow < endRow; tileRow++)
+      {
+        int top = tileRow * TILE_SIZE;
+        int rows = Math.min(TILE_SIZE, height - top);
+        int[] pixels = picture.getBasicPixels(0, top, width, rows);
+        int here = (tileRow + 1) * stride;
+        tileSums[here] = new Histogram();
+        Histogram rowSoFar = new Histogram();
+        for (int tileCol = 0; tileCol < tileColumns; tileCol++)
+        {
+          int left = tileCol * TILE_SIZE;
+          int right = Math.min(left + TILE_SIZE, width);
+          for (int y = 0; y < rows; y++)
+            rowSoFar.add(pixels, y * width + left, y * width + right);
+          tileSums[here + tileCol + 1] = new Histogram(rowSoFar);
+        }
+      }
+    });
+
+    // ... then each entry adds the one above it, from the top down
+    for (int tileRow = 2; tileRow <= tileRows; tileRow++)
+      for (int tileCol = 1; tileCol <= tileColumns; tileCol++)
+        tileSums[tileRow * stride + tileCol].merge(tileSums[(tileRow - 1) * stride + tileCol]);
+  }
+
+  /**
+   * Method to check that the picture has not changed since the tables
+   * were made
+   * @return true if the tables still match the picture
+   */
+  public boolean isUpToDate()
+  {
+    return picture.getVersion() == version;
+  }
+
+  /**
+   * Method to get the average of a channel over a rectangle
+   * @param channel RED, GREEN or BLUE
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the mean value of the channel over the rectangle
+   */
+  public double getMean(int channel, int x, int y, int rectWidth, int rectHeight)
+  {
+    Region region = measure(x, y, rectWidth, rectHeight);
+    return (double) region.sums[channel] / region.count;
+  }
+
+  /**
+   * Method to get the standard deviation of a channel over a rectangle
+   * @param channel RED, GREEN or BLUE
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return the standard deviation of the channel over the rectangle
+   */
+  public double getStandardDeviation(int channel, int x, int y, int rectWidth, int rectHeight)
+  {
+    Region region = measure(x, y, rectWidth, rectHeight);
+    double mean = (double) region.sums[channel] / region.count;
+    double meanOfSquares = (double) region.squares[channel] / region.count;
+    return Math.sqrt(Math.max(0, meanOfSquares - mean * mean));
+  }
+
+  /**
+   * Method to get the histogram of a rectangle, which also gives its
+   * smallest and largest values
+   * @param x the left column of the rectangle
+   * @param y the top row of the rectangle
+   * @param rectWidth the width of the rectangle
+   * @param rectHeight the height of the rectangle
+   * @return a new histogram of the rectangle, not attached to the picture
+   */
+  public Histogram getHistogram(int x, int y, int rectWidth, int rectHeight)
+  {
+    return new Histogram(measure(x, y, rectWidth, rectHeight).histogram);
+  }
+
+  /**
+   * Method to find the histogram, sums and sums of squares of a
+   * rectangle, or to get them again if it was the last one asked about
+   * @return the measurements of the rectangle
+   * @throws IllegalArgumentException if the rectangle isn't inside the
+   * picture or is empty
+   */
+  private synchronized Region measure(int x, int y, int rectWidth, int rectHeight)
+  {
+    checkRectangle(x, y, rectWidth, rectHeight);
+    if (last != null && last.x == x && last.y == y
+        && last.width == rectWidth && last.height == rectHeight)
+      return last;
+    last = new Region(x, y, rectWidth, rectHeight, countRectangle(x, y, rectWidth, rectHeight));
+    return last;
+  }
+
+  /**
+   * Method to count a rectangle from the whole tiles inside it and the
+   * pixels around them
+   * @return a new histogram of the rectangle
+   */
+  private Histogram countRectangle(int x, int y, int rectWidth, int rectHeight)
+  {
+    Histogram histogram = new Histogram();
+
+    // the whole tiles inside the rectangle; the last tile of a row or
+    // column can be partial, and is whole if the rectangle reaches the edge
+    int right = x + rectWidth;
+    int bottom = y + rectHeight;
+    int tileLeft = (x + TILE_SIZE - 1) / TILE_SIZE;
+    int tileTop = (y + TILE_SIZE - 1) / TILE_SIZE;
+    int tileRight = right == width ? tileColumns : right / TILE_SIZE;
+    int tileBottom = bottom == height ? tileRows : bottom / TILE_SIZE;
+    if (tileLeft >= tileRight || tileTop >= tileBottom)
+    {
+      countPixels(histogram, x, y, rectWidth, rectHeight);
+      return histogram;
+    }
+
+    int stride = tileColumns + 1;
+    histogram.merge(tileSums[tileBottom * stride + tileRight]);
+    histogram.subtract(tileSums[tileBottom * stride + tileLeft]);
+    histogram.subtract(tileSums[tileTop * stride + tileRight]);
+    histogram.merge(tileSums[tileTop * stride + tileLeft]);
+
+    // the strips above, below, left and right of the whole tiles
+    int innerLeft = tileLeft * TILE_SIZE;
+    int innerTop = tileTop * TILE_SIZE;
+    int innerRight = Math.min(tileRight * TILE_SIZE, width);
+    int innerBottom = Math.min(tileBottom * TILE_SIZE, height);
+    countPixels(histogram, x, y, rectWidth, innerTop - y);
+    countPixels(histogram, x, innerBottom, rectWidth, bottom - innerBottom);
+    countPixels(histogram, x, innerTop, innerLeft - x, innerBottom - innerTop);
+    countPixels(histogram, innerRight, innerTop, right - innerRight, innerBottom - innerTop);
+    return histogram;
+  }
+
+  /**
+   * Method to count the pixels of a rectangle one by one, if it has any
+   */
+  private void countPixels(Histogram histogram, int x, int y, int rectWidth, int rectHeight)
+  {
+    if (rectWidth > 0 && rectHeight > 0)
+      histogram.add(picture.getBasicPixels(x, y, rectWidth, rectHeight));
+  }
+
+  /**
+   * Method to check that a rectangle is inside the picture and not empty
+   * @throws IllegalArgumentException if it isn't
+   */
+  private void checkRectangle(int x, int y, int rectWidth, int rectHeight)
+  {
+    if (rectWidth < 1 || rectHeight < 1 || x < 0 || y < 0
+        || x + rectWidth > width || y + rectHeight > height)
+      throw new IllegalArgumentException("the rectangle " + x + "," + y + " " + rectWidth + "x"
+                                         + rectHeight + " is not inside the " + width + "x"
+                                         + height + " picture");
+  }
+
+  /**
+   * The histogram of a rectangle and the sums worked out from it
+   */
+  private static class Region
+  {
+    /** the rectangle */
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+
+    /** the counts of the rectangle's values */
+    private final Histogram histogram;
+
+    /** the number of pixels */
+    private final long count;
+
+    /** the total and the total of the squares of each channel */
+    private final long[] sums = new long[3];
+    private final long[] squares = new long[3];
+
+    /**
+     * Constructor that works out the sums of a rectangle from its histogram
+     */
+    private Region(int x, int y, int width, int height, Histogram histogram)
+    {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+      this.histogram = histogram;
+      this.count = (long) width * height;
+      for (int channel = 0; channel < 3; channel++)
+      {
+        int[] counts = histogram.getCounts(channel);
+        for (int value = 0; value < Histogram.VALUES; value++)
+        {
+          sums[channel] += (long) value * counts[value];
+          squares[channel] += (long) value * value * counts[value];
+        }
+      }
+    }
+  }
+}
@@ -4,6 +4,9 @@ import javax.swing.ImageIcon;
 import java.awt.*;
 import java.io.*;
 import java.awt.geom.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class that represents a simple picture.  A simple picture may have
@@ -44,6 +47,55 @@ public class SimplePicture implements DigitalPicture
    */
   private String extension;
   
+  /**
+   * modification version, increased every time pixels are written
+   */
+  private final AtomicLong version = new AtomicLong();
+  
+  /**
+   * the parts of the picture changed since the display last took them
+   */
+  private final DirtyRegion dirtyRegion = new DirtyRegion();
+  
+  /**
+   * the smaller copies of the picture, made when first needed
+   */
+  private Pyramid pyramid;
+  
+  /**
+   * the tables for statistics of rectangles of the picture, made when first needed
+   */
+  private RegionStatistics regionStatistics;
+  
+  /**
+   * the listeners told about pixels written with setBasicPixel(s)
+   */
+  private final List<WriteListener> writeListeners = new CopyOnWriteArrayList<WriteListener>();
+  
+  /**
+   * Something that wants to know the old and new values of pixels as
+   * they are written, to keep itself up to date without looking at the
+   * whole picture again.  Only setBasicPixel and setBasicPixels (and so
+   * Pixel and the bulk methods) report writes; anything else, such as
+   * drawing with a graphics object, only changes the version, so a
+   * listener must also check the version before trusting itself.
+   */
+  public interface WriteListener
+  {
+    /**
+     * Method called after a rectangle of pixels has been written
+     * @param x the left column of the rectangle
+     * @param y the top row of the rectangle
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     * @param oldPixels the pixel values before the write, in row-major order
+     * @param newPixels the pixel values written, in row-major order
+     * @param version the version of the picture after the write
+     */
+    void pixelsWritten(int x, int y, int width, int height,
+                       int[] oldPixels, int[] newPixels, long version);
+  }
+  
  
  /////////////////////// Constructors /////////////////////////
  
@@ -151,27 +203,17 @@ public class SimplePicture implements DigitalPicture
   */
  public void copyPicture(SimplePicture sourcePicture)
  {
-   Pixel sourcePixel = null;
-   Pixel targetPixel = null;
+   // only the overlapping part of the two pictures is copied
+   int width = Math.min(sourcePicture.getWidth(), this.getWidth());
+   int height = Math.min(sourcePicture.getHeight(), this.getHeight());
+   int[] source = sourcePicture.getBasicPixels(0,0,width,height);
+   int[] target = this.getBasicPixels(0,0,width,height);
    
-   // loop through the columns
-   for (int sourceX = 0, targetX = 0; 
-        sourceX < sourcePicture.getWidth() &&
-        targetX < this.getWidth();
-        sourceX++, targetX++)
-   {
-     // loop through the rows
-     for (int sourceY = 0, targetY = 0; 
-          sourceY < sourcePicture.getHeight() && 
-          targetY < this.getHeight();
-          sourceY++, targetY++)
-     {
-       sourcePixel = sourcePicture.getPixel(sourceX,sourceY);
-       targetPixel = this.getPixel(targetX,targetY);
-       targetPixel.setColor(sourcePixel.getColor());
-     }
-   }
+   // copy the colors but keep the alpha of the target pixels
+   for (int i = 0; i < target.length; i++)
+     target[i] = (target[i] & 0xff000000) | (source[i] & 0x00ffffff);
    
+   setBasicPixels(0,0,width,height,target);
  }
  
  /**
@@ -180,15 +222,14 @@ public class SimplePicture implements DigitalPicture
   */
  public void setAllPixelsToAColor(Color color)
  {
-   // loop through all x
-   for (int x = 0; x < this.getWidth(); x++)
-   {
-     // loop through all y
-     for (int y = 0; y < this.getHeight(); y++)
-     {
-       getPixel(x,y).setColor(color);
-     }
-   }
+   int rgb = color.getRGB() & 0x00ffffff;
+   int[] pixels = getBasicPixels(0,0,getWidth(),getHeight());
+   
+   // set the color but keep the alpha of each pixel
+   for (int i = 0; i < pixels.length; i++)
+     pixels[i] = (pixels[i] & 0xff000000) | rgb;
+   
+   setBasicPixels(0,0,getWidth(),getHeight(),pixels);
  }
  
  /**
@@ -201,20 +242,26 @@ public class SimplePicture implements DigitalPicture
  }
  
  /**
-  * Method to get a graphics object for this picture to use to draw on
+  * Method to get a graphics object for this picture to use to draw on.
+  * Drawing can touch any pixel, so the whole picture is marked as
+  * changed.  Call markDirty again if you keep drawing after the
+  * picture has been displayed.
   * @return a graphics object to use for drawing
   */
  public Graphics getGraphics()
  {
+   markAllDirty();
    return bufferedImage.getGraphics();
  }
  
  /**
   * Method to get a Graphics2D object for this picture which can
-  * be used to do 2D drawing on the picture
+  * be used to do 2D drawing on the picture.  The whole picture is
+  * marked as changed, as in getGraphics.
   */
  public Graphics2D createGraphics()
  {
+   markAllDirty();
    return bufferedImage.createGraphics();
  }
  
@@ -308,7 +355,177 @@ public class SimplePicture implements DigitalPicture
   */     
  public void setBasicPixel(int x, int y, int rgb)
  {
+   if (writeListeners.isEmpty())
+   {
+     bufferedImage.setRGB(x,y,rgb);
+     markDirty(x,y,1,1);
+     return;
+   }
+   int[] old = {bufferedImage.getRGB(x,y)};
    bufferedImage.setRGB(x,y,rgb);
+   markDirty(x,y,1,1);
+   fireWrite(x,y,1,1,old,new int[] {rgb});
+ }
+ 
+ /**
+  * Method to get the pixel values of a rectangle of the picture
+  * @param x the left column of the rectangle
+  * @param y the top row of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  * @return the pixel values (alpha, red, green, blue) in row-major order
+  */
+ public int[] getBasicPixels(int x, int y, int width, int height)
+ {
+   // pictures made by this class hold packed ints, which can be copied
+   // straight out of the raster instead of converted one pixel at a time
+   int type = bufferedImage.getType();
+   if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+   {
+     int[] rgb = (int[]) bufferedImage.getRaster().getDataElements(x,y,width,height,null);
+     if (type == BufferedImage.TYPE_INT_RGB)
+       for (int i = 0; i < rgb.length; i++)
+         rgb[i] |= 0xff000000;
+     return rgb;
+   }
+   return bufferedImage.getRGB(x,y,width,height,null,0,width);
+ }
+ 
+ /**
+  * Method to set the pixel values of a rectangle of the picture.
+  * This is much faster than setting the pixels one at a time and
+  * only marks the rectangle as changed once.
+  * @param x the left column of the rectangle
+  * @param y the top row of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  * @param rgb the new pixel values (alpha, red, green, blue) in row-major order
+  */
+ public void setBasicPixels(int x, int y, int width, int height, int[] rgb)
+ {
+   int[] old = writeListeners.isEmpty() ? null : getBasicPixels(x,y,width,height);
+   int type = bufferedImage.getType();
+   if (type == BufferedImage.TYPE_INT_ARGB)
+     bufferedImage.getRaster().setDataElements(x,y,width,height,rgb);
+   else if (type == BufferedImage.TYPE_INT_RGB)
+   {
+     // the raster has no alpha, so keep the unused top byte clear
+     int[] packed = new int[width * height];
+     for (int i = 0; i < packed.length; i++)
+       packed[i] = rgb[i] & 0x00ffffff;
+     bufferedImage.getRaster().setDataElements(x,y,width,height,packed);
+   }
+   else
+     bufferedImage.setRGB(x,y,width,height,rgb,0,width);
+   markDirty(x,y,width,height);
+   if (old != null)
+     fireWrite(x,y,width,height,old,rgb);
+ }
+ 
+ /**
+  * Method to add a listener to be told about pixels written with
+  * setBasicPixel or setBasicPixels.  While there are listeners every
+  * write reads the old pixel values first.
+  * @param listener the listener to add
+  */
+ public void addWriteListener(WriteListener listener)
+ {
+   writeListeners.add(listener);
+ }
+ 
+ /**
+  * Method to stop telling a listener about written pixels
+  * @param listener the listener to remove
+  */
+ public void removeWriteListener(WriteListener listener)
+ {
+   writeListeners.remove(listener);
+ }
+ 
+ /**
+  * Method to tell every listener about a write
+  */
+ private void fireWrite(int x, int y, int width, int height,
+                        int[] oldPixels, int[] newPixels)
+ {
+   long current = version.get();
+   for (WriteListener listener : writeListeners)
+     listener.pixelsWritten(x,y,width,height,oldPixels,newPixels,current);
+ }
+ 
+ /**
+  * Method to get the modification version of the picture.  The version
+  * goes up every time pixels are written, so anything computed from the
+  * picture can tell if it is out of date by remembering the version.
+  * @return the current version
+  */
+ public long getVersion()
+ {
+   return version.get();
+ }
+ 
+ /**
+  * Method to get the pyramid of smaller copies of this picture.  It is
+  * made the first time it is asked for and kept up to date by checking
+  * the version.
+  * @return the pyramid of this picture
+  */
+ public Pyramid getPyramid()
+ {
+   if (pyramid == null)
+     pyramid = new Pyramid(this);
+   return pyramid;
+ }
+
+ /**
+  * Method to get the tables that give the statistics of any rectangle
+  * of this picture.  They are made the first time they are asked for
+  * and made again the first time after the picture changes.
+  * @return the statistics of this picture as it is now
+  */
+ public RegionStatistics getRegionStatistics()
+ {
+   if (regionStatistics == null || !regionStatistics.isUpToDate())
+     regionStatistics = new RegionStatistics(this);
+   return regionStatistics;
+ }
+ 
+ /**
+  * Method to get the parts of the picture that have changed.  The
+  * display takes the rectangles out of the region when it redraws them.
+  * @return the dirty region of this picture
+  */
+ public DirtyRegion getDirtyRegion()
+ {
+   return dirtyRegion;
+ }
+ 
+ /**
+  * Method to record that a rectangle of the picture has changed.
+  * Code that writes to the buffered image directly should call this
+  * when it is done.
+  * @param x the left column of the rectangle
+  * @param y the top row of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  */
+ public void markDirty(int x, int y, int width, int height)
+ {
+   // only keep the part that is inside the picture
+   int left = Math.max(x, 0);
+   int top = Math.max(y, 0);
+   int right = Math.min(x + width, getWidth());
+   int bottom = Math.min(y + height, getHeight());
+   version.incrementAndGet();
+   dirtyRegion.add(left,top,right - left,bottom - top);
+ }
+ 
+ /**
+  * Method to record that the whole picture has changed
+  */
+ public void markAllDirty()
+ {
+   markDirty(0,0,getWidth(),getHeight());
  }
   
  /**
@@ -372,10 +589,23 @@ public class SimplePicture implements DigitalPicture
    
    // draw the image on the buffered image starting at 0,0
    graphics2d.drawImage(image,0,0,null);
+   markAllDirty();
    
    // show the new image
    show();
  }
+
+ /**
+  * Method to replace the image of the picture with another one, which
+  * can be a different size, such as the full picture once it has loaded
+  * in place of a small version shown while it did
+  * @param image  the image to use
+  */
+ public void setBufferedImage(BufferedImage image)
+ {
+   bufferedImage = image;
+   markAllDirty();
+ }
  
  /**
   * Method to show the picture in a picture frame
@@ -471,6 +701,7 @@ public class SimplePicture implements DigitalPicture
    }
    
    bufferedImage = ImageIO.read(file);
+   markAllDirty();
  }
 
 
@@ -526,6 +757,7 @@ public class SimplePicture implements DigitalPicture
    
    // draw the message
    graphics2d.drawString(message,xPos,yPos);
+   markAllDirty();
    
  }
  
@@ -542,20 +774,26 @@ public class SimplePicture implements DigitalPicture
  
  /**
    * Method to create a new picture by scaling the current
-   * picture by the given 
+   * picture by the given factors.  Making a picture smaller in both
+   * directions is done by the Downscaler, which averages the pixels
+   * each new pixel covers instead of skipping most of them.
    * @param rFactor the amount to scale in the height (rows)
    * @param cFactor the amount to scale in the width (columns)
    * @return the resulting picture
    */
   public Picture scale(double rFactor, double cFactor)
   {
+    int newHeight = (int) (getHeight() * rFactor);
+    int newWidth = (int) (getWidth() * cFactor);
+    if (newWidth >= 1 && newHeight >= 1 && newWidth <= getWidth() && newHeight <= getHeight())
+      return Downscaler.scale(this,newWidth,newHeight);
+    
     // set up the scale tranform
     AffineTransform scaleTransform = new AffineTransform();
     scaleTransform.scale(cFactor,rFactor);
     
     // create a new picture object that is the right size
-    Picture result = new Picture((int) (getHeight() * rFactor),
-                                 (int) (getWidth() * cFactor));
+    Picture result = new Picture(newHeight,newWidth);
     
     // get the graphics 2d object to draw on the result
     Graphics graphics = result.getGraphics();
@@ -578,6 +816,12 @@ public class SimplePicture implements DigitalPicture
   {
     // set up the scale tranform
     double xFactor = (double) width / this.getWidth();
+    int height = (int) (getHeight() * xFactor);
+    
+    // when shrinking, make sure the width comes out exactly as asked, and
+    // start from the pyramid so asking for several sizes shares the work
+    if (width >= 1 && height >= 1 && width <= getWidth())
+      return getPyramid().getScaled(width,height);
     Picture result = scale(xFactor,xFactor);
     return result;
   }
@@ -593,9 +837,43 @@ public class SimplePicture implements DigitalPicture
   {
     // set up the scale tranform
     double yFactor = (double) height / this.getHeight();
+    int width = (int) (getWidth() * yFactor);
+    
+    // when shrinking, make sure the height comes out exactly as asked, and
+    // start from the pyramid so asking for several sizes shares the work
+    if (width >= 1 && height >= 1 && height <= getHeight())
+      return getPyramid().getScaled(width,height);
     Picture result = scale(yFactor,yFactor);
     return result;
   }
+  
+  /**
+   * Method to create a new picture by rotating the current picture
+   * about its center.  The new picture is just big enough to hold the
+   * rotated one, and the corners it doesn't cover are white.
+   * @param degrees how far to turn the picture, clockwise
+   * @param interpolation how to find colors between pixels
+   * @return the rotated picture
+   */
+  public Picture rotate(double degrees, Interpolation interpolation)
+  {
+    AffineTransform rotation = AffineTransform.getRotateInstance(Math.toRadians(degrees));
+    return Warp.affine(this,rotation,interpolation,Color.white);
+  }
+  
+  /**
+   * Method to create a new picture by applying a transform such as a
+   * rotation or shear to the current picture.  The new picture is just
+   * big enough to hold the result, and the parts it doesn't cover are
+   * white.
+   * @param trans the transform to apply
+   * @param interpolation how to find colors between pixels
+   * @return the transformed picture
+   */
+  public Picture transform(AffineTransform trans, Interpolation interpolation)
+  {
+    return Warp.affine(this,trans,interpolation,Color.white);
+  }
  
  /**
   * Method to load a picture from a file name and show it in a picture frame
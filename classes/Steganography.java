@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Hides data in the lowest bits of the colors of a picture, where the
+ * changes are too small to see, and gets it back out again.
+ *
+ * The caller picks which channels (any of RED, GREEN and BLUE) and how
+ * many low bits of each to use.  Each pixel then holds a chunk of
+ * channels * bits bits of the data.  The data is read from a stream
+ * into a 64 bit buffer and taken off it a whole chunk at a time, so
+ * the data itself is never held in memory all at once.  The first
+ * pixels hold the length of the data in bytes; that is filled in after
+ * the data, once the length is known.
+ *
+ * Black and white message pictures, as in the picture lab, are hidden
+ * one pixel per pixel in the lowest red bit instead.
+ */
+public class Steganography
+{
+  /** the channel flags, which can be added together */
+  public static final int RED = 1;
+  public static final int GREEN = 2;
+  public static final int BLUE = 4;
+
+  /** the number of bits used to store the length of the data */
+  private static final int LENGTH_BITS = 32;
+
+  /** the size of the buffer used to read and write the streams */
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Method to get how many bytes of data a picture can hold
+   * @param picture the picture to hide the data in
+   * @param channels the channels to use, such as RED + GREEN + BLUE
+   * @param bits how many low bits of each channel to use, from 1 to 8
+   * @return the most bytes that can be hidden
+   */
+  public static long capacity(SimplePicture picture, int channels, int bits)
+  {
+    Layout layout = new Layout(channels, bits);
+    long pixels = (long) picture.getWidth() * picture.getHeight() - layout.headerPixels;
+    return Math.min(Integer.MAX_VALUE, Math.max(0, pixels * layout.chunkBits / 8));
+  }
+
+  /**
+   * Method to hide data in a picture.  The picture is only changed if
+   * all of the data fits.
+   * @param picture the picture to hide the data in
+   * @param data the data to hide, which is read to the end
+   * @param channels the channels to use, such as RED + GREEN + BLUE
+   * @param bits how many low bits of each channel to use, from 1 to 8
+   * @return the number of bytes hidden
+   * @throws IOException if the data can't be read
+   * @throws IllegalArgumentException if there is more data than capacity allows
+   */
+  public static long encode(SimplePicture picture, InputStream data,
+                            int channels, int bits) throws IOException
+  {
+    Layout layout = new Layout(channels, bits);
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    long capacity = capacity(picture, channels, bits);
+    if ((long) width * height < layout.headerPixels)
+      throw new IllegalArgumentException("the picture is too small to hold any data");
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    long chunkMask = (1L << layout.chunkBits) - 1;
+
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int buffered = 0;
+    int next = 0;
+    boolean ended = false;
+    long pending = 0;
+    int pendingBits = 0;
+    long length = 0;
+    int p = layout.headerPixels;
+    while (true)
+    {
+      // top up the bit buffer a byte at a time, reading more when needed
+      while (pendingBits <= 56 && !ended)
+      {
+        if (next == buffered)
+        {
+          buffered = data.read(buffer);
+          next = 0;
+          if (buffered < 0)
+          {
+            ended = true;
+            break;
+          }
+          continue;
+        }
+        pending |= (long) (buffer[next++] & 0xff) << pendingBits;
+        pendingBits += 8;
+        length++;
+      }
+      if (length > capacity)
+        throw new IllegalArgumentException("the data is larger than the "
+                                           + capacity + " bytes the picture can hold");
+      if (pendingBits <= 0)
+        break;
+      pixels[p] = layout.insert(pixels[p], (int) (pending & chunkMask));
+      p++;
+      pending >>>= layout.chunkBits;
+      pendingBits -= layout.chunkBits;
+    }
+
+    // now the length is known, put it in the header pixels
+    long header = length;
+    for (int i = 0; i < layout.headerPixels; i++)
+    {
+      pixels[i] = layout.insert(pixels[i], (int) (header & chunkMask));
+      header >>>= layout.chunkBits;
+    }
+
+    int rows = (p + width - 1) / width;
+    int[] changed = new int[rows * width];
+    System.arraycopy(pixels, 0, changed, 0, changed.length);
+    picture.setBasicPixels(0, 0, width, rows, changed);
+    return length;
+  }
+
+  /**
+   * Method to get back data hidden by encode
+   * @param picture the picture the data is hidden in
+   * @param data where to write the data
+   * @param channels the channels that were used
+   * @param bits how many low bits of each channel were used
+   * @return the number of bytes written
+   * @throws IOException if the data can't be written, or the picture
+   * doesn't hold data hidden this way
+   */
+  public static long decode(SimplePicture picture, OutputStream data,
+                            int channels, int bits) throws IOException
+  {
+    Layout layout = new Layout(channels, bits);
+    int width = picture.getWidth();
+    long capacity = capacity(picture, channels, bits);
+    if (capacity == 0)
+      throw new IOException("the picture is too small to hold any data");
+
+    int[] pixels = picture.getBasicPixels(0, 0, width,
+                                          (layout.headerPixels + width - 1) / width);
+    long length = 0;
+    for (int i = layout.headerPixels - 1; i >= 0; i--)
+      length = (length << layout.chunkBits) | layout.extract(pixels[i]);
+    length &= (1L << LENGTH_BITS) - 1;
+    if (length > capacity)
+      throw new IOException("the picture does not hold data hidden this way");
+
+    // read only the rows the data is in
+    int usedPixels = (int) ((length * 8 + layout.chunkBits - 1) / layout.chunkBits)
+      + layout.headerPixels;
+    int rows = (usedPixels + width - 1) / width;
+    if (rows * width > pixels.length)
+      pixels = picture.getBasicPixels(0, 0, width, rows);
+
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int buffered = 0;
+    long pending = 0;
+    int pendingBits = 0;
+    long written = 0;
+    int p = layout.headerPixels;
+    while (written < length)
+    {
+      pending |= (long) layout.extract(pixels[p++]) << pendingBits;
+      pendingBits += layout.chunkBits;
+      while (pendingBits >= 8 && written < length)
+      {
+        buffer[buffered++] = (byte) pending;
+        pending >>>= 8;
+        pendingBits -= 8;
+        written++;
+        if (buffered == buffer.length)
+        {
+          data.write(buffer, 0, buffered);
+          buffered = 0;
+        }
+      }
+    }
+    data.write(buffer, 0, buffered);
+    return written;
+  }
+
+  /**
+   * Method to hide a black and white message in the lowest red bit.
+   * Only the part of the message that fits on the picture is hidden.
+   * @param picture the picture to hide the message in
+   * @param message the message, with foreground pixels set
+   */
+  public static void encode(SimplePicture picture, BinaryImage message)
+  {
+    int width = Math.min(picture.getWidth(), message.getWidth());
+    int height = Math.min(picture.getHeight(), message.getHeight());
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    long[] bits = message.getBits();
+    int words = message.getWordsPerRow();
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        for (int col = 0; col < width; col += 64)
+        {
+          long word = bits[row * words + (col >>> 6)];
+          int end = Math.min(col + 64, width);
+          for (int i = row * width + col; i < row * width + end; i++)
+          {
+            pixels[i] = (pixels[i] & ~0x10000) | ((int) word & 1) << 16;
+            word >>>= 1;
+          }
+        }
+      }
+    });
+    picture.setBasicPixels(0, 0, width, height, pixels);
+  }
+
+  /**
+   * Method to get back a message hidden in the lowest red bit
+   * @param picture the picture the message is hidden in
+   * @return the message, with foreground where the lowest red bit is set
+   */
+  public static BinaryImage decode(SimplePicture picture)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    BinaryImage message = new BinaryImage(width, height);
+    long[] bits = message.getBits();
+    int words = message.getWordsPerRow();
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++)
+      {
+        for (int col = 0; col < width; col += 64)
+        {
+          long word = 0;
+          int end = Math.min(col + 64, width);
+          for (int i = row * width + end - 1; i >= row * width + col; i--)
+            word = (word << 1) | ((pixels[i] >>> 16) & 1);
+          bits[row * words + (col >>> 6)] = word;
+        }
+      }
+    });
+    return message;
+  }
+
+  /**
+   * Where the bits of a chunk go in a pixel
+   */
+  private static class Layout
+  {
+    /** the bit positions of the chosen channels in a pixel value */
+    private final int[] shifts;
+
+    /** the bits used in one channel, starting from the lowest */
+    private final int channelMask;
+
+    /** the bits of a pixel value that are replaced */
+    private final int pixelMask;
+
+    private final int bits;
+    private final int chunkBits;
+    private final int headerPixels;
+
+    /**
+     * Constructor that checks and sets up the layout
+     * @param channels the channel flags
+     * @param bits the low bits to use of each channel
+     */
+    Layout(int channels, int bits)
+    {
+      if (bits < 1 || bits > 8)
+        throw new IllegalArgumentException("bits must be from 1 to 8, not " + bits);
+      if ((channels & (RED | GREEN | BLUE)) == 0 || (channels & ~(RED | GREEN | BLUE)) != 0)
+        throw new IllegalArgumentException("channels must be some of RED, GREEN and BLUE");
+      int count = Integer.bitCount(channels);
+      shifts = new int[count];
+      int k = 0;
+      if ((channels & RED) != 0) shifts[k++] = 16;
+      if ((channels & GREEN) != 0) shifts[k++] = 8;
+      if ((channels & BLUE) != 0) shifts[k++] = 0;
+      this.bits = bits;
+      channelMask = (1 << bits) - 1;
+      int mask = 0;
+      for (int shift : shifts)
+        mask |= channelMask << shift;
+      pixelMask = mask;
+      chunkBits = count * bits;
+      headerPixels = (LENGTH_BITS + chunkBits - 1) / chunkBits;
+    }
+
+    /**
+     * Method to put a chunk into the low bits of a pixel value
+     */
+    int insert(int pixel, int chunk)
+    {
+      int value = pixel & ~pixelMask;
+      for (int shift : shifts)
+      {
+        value |= (chunk & channelMask) << shift;
+        chunk >>>= bits;
+      }
+      return value;
+    }
+
+    /**
+     * Method to get the chunk out of the low bits of a pixel value
+     */
+    int extract(int pixel)
+    {
+      int chunk = 0;
+      for (int k = shifts.length - 1; k >= 0; k--)
+        chunk = (chunk << bits) | ((pixel >>> shifts[k]) & channelMask);
+      return chunk;
+    }
+  }
+}
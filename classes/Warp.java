@@ -0,0 +1,332 @@
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Moves the pixels of a picture to new places: rotations, shears and
+ * other affine transforms, and perspective transforms (homographies)
+ * like the one that straightens a photo of a page taken at an angle.
+ *
+ * The new picture is made just big enough to hold the moved picture.
+ * Each of its pixels is mapped back to the point in the source it came
+ * from and its color is interpolated there, so every new pixel gets a
+ * color and none are left as holes.  Along a row, the mapped-back point
+ * moves by the same step from pixel to pixel, so it is stepped along
+ * rather than worked out from the start.  For a perspective transform
+ * the step is taken before the divide, which keeps it a straight line.
+ * Rows are done in parallel bands and the result is written straight
+ * into the new picture's raster.
+ *
+ * A transform is kept as a 3 x 3 matrix of 9 numbers in row-major
+ * order, which maps (x, y, 1) to (u, v, w) and so (x, y) to (u/w, v/w).
+ * An affine transform has 0, 0, 1 as its last row.
+ */
+public class Warp
+{
+  /**
+   * Method to apply an affine transform to a picture.  Only the
+   * rotation, scaling and shearing of the transform are used; the new
+   * picture is moved so it just fits, as getTransformEnclosingRect says.
+   * @param picture the picture to transform
+   * @param transform the transform to apply
+   * @param interpolation how to find colors between pixels
+   * @param background the color for places the picture doesn't cover
+   * @return the new picture
+   */
+  public static Picture affine(SimplePicture picture, AffineTransform transform,
+                               Interpolation interpolation, Color background)
+  {
+    AffineTransform linear = new AffineTransform(transform.getScaleX(), transform.getShearY(),
+                                                 transform.getShearX(), transform.getScaleY(), 0, 0);
+    double[] m = new double[6];
+    try
+    {
+      linear.createInverse().getMatrix(m);
+    }
+    catch (NoninvertibleTransformException ex)
+    {
+      throw new IllegalArgumentException("the transform squashes the picture flat", ex);
+    }
+    // getMatrix gives the columns: scaleX, shearY, shearX, scaleY, translateX, translateY
+    double[] inverse = {m[0], m[2], m[4], m[1], m[3], m[5], 0, 0, 1};
+    Rectangle2D bounds = picture.getTransformEnclosingRect(linear);
+    return warp(picture, inverse, bounds, interpolation, background);
+  }
+
+  /**
+   * Method to apply a perspective transform to a picture.  The new
+   * picture is made just big enough to hold where the corners go.
+   * @param picture the picture to transform
+   * @param homography the 3 x 3 transform in row-major order
+   * @param interpolation how to find colors between pixels
+   * @param background the color for places the picture doesn't cover
+   * @return the new picture
+   */
+  public static Picture perspective(SimplePicture picture, double[] homography,
+                                    Interpolation interpolation, Color background)
+  {
+    double maxX = picture.getWidth() - 1;
+    double maxY = picture.getHeight() - 1;
+    double[] corners = {0, 0, maxX, 0, maxX, maxY, 0, maxY};
+    double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+    double highX = -Double.MAX_VALUE, highY = -Double.MAX_VALUE;
+    for (int k = 0; k < corners.length; k += 2)
+    {
+      double x = corners[k];
+      double y = corners[k + 1];
+      double w = homography[6] * x + homography[7] * y + homography[8];
+      if (w <= 0)
+        throw new IllegalArgumentException("the transform sends a corner of the picture to infinity");
+      double u = (homography[0] * x + homography[1] * y + homography[2]) / w;
+      double v = (homography[3] * x + homography[4] * y + homography[5]) / w;
+      minX = Math.min(minX, u);
+      minY = Math.min(minY, v);
+      highX = Math.max(highX, u);
+      highY = Math.max(highY, v);
+    }
+    Rectangle2D bounds = new Rectangle2D.Double(minX, minY, highX - minX + 1, highY - minY + 1);
+    return warp(picture, invert(homography), bounds, interpolation, background);
+  }
+
+  /**
+   * Method to straighten a four-sided part of a picture, such as a page
+   * photographed at an angle, into a rectangle
+   * @param picture the picture to take the part from
+   * @param corners the top left, top right, bottom right and bottom left
+   * corners of the part
+   * @param width the width of the rectangle
+   * @param height the height of the rectangle
+   * @param interpolation how to find colors between pixels
+   * @return the new picture
+   */
+  public static Picture straighten(SimplePicture picture, Point2D[] corners, int width, int height,
+                                   Interpolation interpolation)
+  {
+    Point2D[] rectangle = {
+      new Point2D.Double(0, 0), new Point2D.Double(width - 1, 0),
+      new Point2D.Double(width - 1, height - 1), new Point2D.Double(0, height - 1)};
+    // map the rectangle back onto the picture, which is what warp needs
+    double[] inverse = homography(rectangle, corners);
+    return warp(picture, inverse, new Rectangle2D.Double(0, 0, width, height),
+                interpolation, Color.white);
+  }
+
+  /**
+   * Method to find the perspective transform that takes four points to
+   * four others
+   * @param from the four points to start from, no three in a line
+   * @param to where each of them should go
+   * @return the 3 x 3 transform in row-major order
+   */
+  public static double[] homography(Point2D[] from, Point2D[] to)
+  {
+    // two equations for each point, for the 8 unknowns (the last entry is 1)
+    double[][] rows = new double[8][9];
+    for (int k = 0; k < 4; k++)
+    {
+      double x = from[k].getX();
+      double y = from[k].getY();
+      double u = to[k].getX();
+      double v = to[k].getY();
+      rows[2 * k] = new double[] {x, y, 1, 0, 0, 0, -u * x, -u * y, u};
+      rows[2 * k + 1] = new double[] {0, 0, 0, x, y, 1, -v * x, -v * y, v};
+    }
+
+    // Gaussian elimination, picking the largest pivot in each column
+    for (int col = 0; col < 8; col++)
+    {
+      int pivot = col;
+      for (int row = col + 1; row < 8; row++)
+        if (Math.abs(rows[row][col]) > Math.abs(rows[pivot][col]))
+          pivot = row;
+      if (Math.abs(rows[pivot][col]) < 1e-12)
+        throw new IllegalArgumentException("three of the points are in a line");
+      double[] swap = rows[col];
+      rows[col] = rows[pivot];
+      rows[pivot] = swap;
+      for (int row = 0; row < 8; row++)
+      {
+        if (row == col)
+          continue;
+        double factor = rows[row][col] / rows[col][col];
+        for (int k = col; k < 9; k++)
+          rows[row][k] -= factor * rows[col][k];
+      }
+    }
+    double[] homography = new double[9];
+    for (int k = 0; k < 8; k++)
+      homography[k] = rows[k][8] / rows[k][k];
+    homography[8] = 1;
+    return homography;
+  }
+
+  /**
+   * Method to find the transform that undoes a 3 x 3 transform
+   * @param m the transform in row-major order
+   * @return the inverse transform in row-major order
+   */
+  private static double[] invert(double[] m)
+  {
+    // the adjugate; dividing by the determinant is left out since
+    // (u, v, w) and any multiple of it stand for the same point
+    double[] inverse = {
+      m[4] * m[8] - m[5] * m[7], m[2] * m[7] - m[1] * m[8], m[1] * m[5] - m[2] * m[4],
+      m[5] * m[6] - m[3] * m[8], m[0] * m[8] - m[2] * m[6], m[2] * m[3] - m[0] * m[5],
+      m[3] * m[7] - m[4] * m[6], m[1] * m[6] - m[0] * m[7], m[0] * m[4] - m[1] * m[3]};
+    double determinant = m[0] * inverse[0] + m[1] * inverse[3] + m[2] * inverse[6];
+    if (Math.abs(determinant) < 1e-12)
+      throw new IllegalArgumentException("the transform squashes the picture flat");
+    // keep w positive for points in front
+    if (determinant < 0)
+      for (int k = 0; k < 9; k++)
+        inverse[k] = -inverse[k];
+    return inverse;
+  }
+
+  /**
+   * Method to make the new picture by mapping each of its pixels back
+   * into the source picture
+   * @param picture the source picture
+   * @param inverse the 3 x 3 transform from the new picture to the source
+   * @param bounds where the new picture is, in the coordinates the
+   * inverse transform starts from
+   * @param interpolation how to find colors between pixels
+   * @param background the color for places the picture doesn't cover
+   * @return the new picture
+   */
+  private static Picture warp(SimplePicture picture, double[] inverse, Rectangle2D bounds,
+                              Interpolation interpolation, Color background)
+  {
+    int sourceWidth = picture.getWidth();
+    int sourceHeight = picture.getHeight();
+    int[] source = picture.getBasicPixels(0, 0, sourceWidth, sourceHeight);
+    // a little slack so an exact size isn't rounded up by float error
+    int width = Math.max(1, (int) Math.ceil(bounds.getWidth() - 1e-6));
+    int height = Math.max(1, (int) Math.ceil(bounds.getHeight() - 1e-6));
+    double left = bounds.getX();
+    double top = bounds.getY();
+
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] target = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    int fill = 0xff000000 | background.getRGB();
+    int taps = interpolation.getTaps();
+    int[] weights = interpolation.weights();
+    boolean nearest = interpolation == Interpolation.NEAREST;
+    boolean bilinear = interpolation == Interpolation.BILINEAR;
+    // for an affine transform w is always 1 and the divide can be skipped
+    boolean affine = inverse[6] == 0 && inverse[7] == 0 && inverse[8] == 1;
+
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      int[] columns = new int[taps];
+      int[] rows = new int[taps];
+      for (int row = startRow; row < endRow; row++)
+      {
+        // where the first pixel of the row maps to, before the divide
+        double y = top + row;
+        double u = inverse[0] * left + inverse[1] * y + inverse[2];
+        double v = inverse[3] * left + inverse[4] * y + inverse[5];
+        double w = inverse[6] * left + inverse[7] * y + inverse[8];
+        int i = row * width;
+        for (int col = 0; col < width; col++, i++, u += inverse[0], v += inverse[3], w += inverse[6])
+        {
+          double sx = affine ? u : u / w;
+          double sy = affine ? v : v / w;
+          // written this way round so a point at infinity (NaN) is outside too
+          if (!(w > 0 && sx >= -0.5 && sx < sourceWidth - 0.5 && sy >= -0.5 && sy < sourceHeight - 0.5))
+          {
+            target[i] = fill;
+            continue;
+          }
+          int firstX = interpolation.firstPixel(sx);
+          int firstY = interpolation.firstPixel(sy);
+          if (nearest)
+          {
+            target[i] = 0xff000000 | source[firstY * sourceWidth + firstX];
+            continue;
+          }
+          if (bilinear && firstX >= 0 && firstX < sourceWidth - 1 && firstY >= 0 && firstY < sourceHeight - 1)
+          {
+            // the common case written out: 4 pixels, weights out of SUBPIXELS
+            target[i] = bilinear(source, firstY * sourceWidth + firstX, sourceWidth,
+                                 Interpolation.subpixel(sx), Interpolation.subpixel(sy));
+            continue;
+          }
+
+          // the taps around the point, with those off the edge moved onto it
+          for (int k = 0; k < taps; k++)
+          {
+            columns[k] = Math.max(0, Math.min(sourceWidth - 1, firstX + k));
+            rows[k] = Math.max(0, Math.min(sourceHeight - 1, firstY + k)) * sourceWidth;
+          }
+          int xOffset = Interpolation.subpixel(sx) * taps;
+          int yOffset = Interpolation.subpixel(sy) * taps;
+          int red = 0, green = 0, blue = 0;
+          for (int j = 0; j < taps; j++)
+          {
+            int yWeight = weights[yOffset + j];
+            if (yWeight == 0)
+              continue;
+            int rowRed = 0, rowGreen = 0, rowBlue = 0;
+            for (int k = 0; k < taps; k++)
+            {
+              int xWeight = weights[xOffset + k];
+              int rgb = source[rows[j] + columns[k]];
+              rowRed += xWeight * ((rgb >> 16) & 0xff);
+              rowGreen += xWeight * ((rgb >> 8) & 0xff);
+              rowBlue += xWeight * (rgb & 0xff);
+            }
+            // drop 4 of the 12 fraction bits so the next multiply can't overflow
+            red += (rowRed >> 4) * yWeight;
+            green += (rowGreen >> 4) * yWeight;
+            blue += (rowBlue >> 4) * yWeight;
+          }
+          target[i] = 0xff000000 | (toByte(red) << 16) | (toByte(green) << 8) | toByte(blue);
+        }
+      }
+    });
+    return new Picture(image);
+  }
+
+  /**
+   * Method to mix a 2 x 2 square of pixels, giving the same result as
+   * the BILINEAR weights table
+   * @param source the source pixels
+   * @param i the index of the top left pixel of the square
+   * @param width the width of the source
+   * @param across how far the point is towards the right pixels, out of SUBPIXELS
+   * @param down how far the point is towards the bottom pixels, out of SUBPIXELS
+   * @return the mixed pixel value
+   */
+  private static int bilinear(int[] source, int i, int width, int across, int down)
+  {
+    int topLeft = source[i];
+    int topRight = source[i + 1];
+    int bottomLeft = source[i + width];
+    int bottomRight = source[i + width + 1];
+    int left = Interpolation.SUBPIXELS - across;
+    int up = Interpolation.SUBPIXELS - down;
+    int half = 1 << 11;
+    int result = 0xff000000;
+    for (int shift = 16; shift >= 0; shift -= 8)
+    {
+      int top = ((topLeft >> shift) & 0xff) * left + ((topRight >> shift) & 0xff) * across;
+      int bottom = ((bottomLeft >> shift) & 0xff) * left + ((bottomRight >> shift) & 0xff) * across;
+      result |= ((top * up + bottom * down + half) >> 12) << shift;
+    }
+    return result;
+  }
+
+  /**
+   * Method to round a sum with 20 fraction bits to a color value,
+   * keeping it between 0 and 255 (the wider interpolations can overshoot)
+   */
+  private static int toByte(int sum)
+  {
+    int value = (sum + (1 << 19)) >> 20;
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Ways to remove a color cast, such as the blue-green of pictures taken
+ * under water.  Each one looks at the red, green and blue histograms
+ * (made in one parallel pass) to choose a lookup table for each
+ * channel, and the tables are then applied in a second parallel pass.
+ * No Pixel objects are made.
+ */
+public enum WhiteBalance
+{
+  /**
+   * assume the scene is gray on average: scale each channel so its
+   * average is the average of all three
+   */
+  GRAY_WORLD,
+
+  /**
+   * assume the brightest value of each channel is white: scale each
+   * channel so its largest value becomes 255
+   */
+  WHITE_PATCH,
+
+  /**
+   * stretch each channel so a small fraction of its values are at or
+   * below 0 and the same fraction at or above 255, which ignores a few
+   * stray dark or bright pixels that would fool WHITE_PATCH
+   */
+  PERCENTILE;
+
+  /** the fraction cut off each end of a channel by PERCENTILE if none is given */
+  public static final double DEFAULT_FRACTION = 0.01;
+
+  /**
+   * Method to balance the colors of a picture
+   * @param picture the picture to change
+   */
+  public void apply(SimplePicture picture)
+  {
+    apply(picture, DEFAULT_FRACTION);
+  }
+
+  /**
+   * Method to balance the colors of a picture
+   * @param picture the picture to change
+   * @param fraction for PERCENTILE, the fraction of values to cut off
+   * each end of each channel, such as 0.01; not used by the others
+   */
+  public void apply(SimplePicture picture, double fraction)
+  {
+    int width = picture.getWidth();
+    int height = picture.getHeight();
+    int[] pixels = picture.getBasicPixels(0, 0, width, height);
+    int[][] tables = tables(Histogram.of(pixels, width, height), fraction);
+    int[] red = tables[Histogram.RED];
+    int[] green = tables[Histogram.GREEN];
+    int[] blue = tables[Histogram.BLUE];
+    ParallelRows.forEachBand(height, (startRow, endRow) -> {
+      for (int i = startRow * width; i < endRow * width; i++)
+      {
+        int rgb = pixels[i];
+        pixels[i] = (rgb & 0xff000000) | red[(rgb >> 16) & 0xff]
+          | green[(rgb >> 8) & 0xff] | blue[rgb & 0xff];
+      }
+    });
+    picture.setBasicPixels(0, 0, width, height, pixels);
+  }
+
+  /**
+   * Method to work out the lookup tables for a picture's histogram.
+   * Each table already has its channel's value shifted into place, so
+   * a pixel is just the three table entries ORed together.
+   * @param histogram the histogram of the picture
+   * @param fraction for PERCENTILE, the fraction to cut off each end
+   * @return the red, green and blue tables
+   */
+  public int[][] tables(Histogram histogram, double fraction)
+  {
+    int[][] tables = new int[3][Histogram.VALUES];
+    double gray = (histogram.getMean(Histogram.RED) + histogram.getMean(Histogram.GREEN)
+                   + histogram.getMean(Histogram.BLUE)) / 3;
+    for (int channel = 0; channel < 3; channel++)
+    {
+      // the channel value that maps to 0 and the one that maps to 255
+      double low = 0;
+      double high;
+      switch (this)
+      {
+        case GRAY_WORLD:
+          double mean = histogram.getMean(channel);
+          high = mean == 0 ? 255 : 255 * mean / gray;
+          break;
+        case WHITE_PATCH:
+          high = histogram.getMax(channel);
+          break;
+        default:
+          low = histogram.getPercentile(channel, fraction);
+          high = histogram.getPercentile(channel, 1 - fraction);
+          break;
+      }
+      if (high <= low)
+        high = low + 1;
+      int shift = 16 - 8 * channel;
+      for (int value = 0; value < Histogram.VALUES; value++)
+      {
+        long scaled = Math.round((value - low) * 255 / (high - low));
+        tables[channel][value] = (int) Math.max(0, Math.min(255, scaled)) << shift;
+      }
+    }
+    return tables;
+  }
+}